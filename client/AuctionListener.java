@@ -0,0 +1,15 @@
+/**
+ * A callback exported by a client to be pushed events about the auctions
+ * it has subscribed to. Events are printed as they arrive.
+ * @author Thomas Watkins
+ */
+public class AuctionListener implements IAuctionListener {
+
+	/**
+	 * @see IAuctionListener#onEvent()
+	 */
+	public void onEvent(AuctionEvent event) {
+		System.out.println();
+		System.out.println("[Notification] " + event);
+	}
+}
@@ -0,0 +1,139 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A client side stub that spreads calls over every Frontend bound in the registry
+ * under a common name prefix. Calls are made round robin, and a Frontend that
+ * can't be reached is dropped and the call retried on the next one. A dropped
+ * Frontend is never looked up again, as its registry entry stays bound after it
+ * fails, but a Frontend restarted under the same name has a new stub and is.
+ * @author Thomas Watkins
+ */
+public class AuctionLoadBalancer implements InvocationHandler {
+
+	// Methods that don't change any state, so they are safe to retry on another Frontend
+	private static final Set<String> READ_ONLY = new HashSet<>(Arrays.asList("browseAuctions", "searchAuctions",
+			"getAuction", "getMyListings", "getMyBids", "getArchivedAuction", "getEvents"));
+
+	private final Registry registry;
+	private final String prefix;
+	private final List<IAuction> servers;
+	private final Set<IAuction> dropped;
+	private int next;
+
+	/**
+	 * Constructor. Creates an AuctionLoadBalancer.
+	 * @param registry the registry the Frontends are bound in
+	 * @param prefix   the name prefix shared by the Frontends
+	 */
+	private AuctionLoadBalancer(Registry registry, String prefix) {
+		this.registry = registry;
+		this.prefix = prefix;
+		this.servers = new ArrayList<>();
+		this.dropped = new HashSet<>();
+		this.next = 0;
+	}
+
+	/**
+	 * Returns an IAuction that load balances over every Frontend in a registry.
+	 * @param host   the host of the registry
+	 * @param prefix the name prefix shared by the Frontends
+	 * @return       the load balancing IAuction
+	 * @throws RemoteException if no Frontend could be found
+	 */
+	public static IAuction connect(String host, String prefix) throws RemoteException {
+		AuctionLoadBalancer balancer = new AuctionLoadBalancer(LocateRegistry.getRegistry(host), prefix);
+		balancer.lookup();
+		return (IAuction) Proxy.newProxyInstance(IAuction.class.getClassLoader(), new Class[] { IAuction.class }, balancer);
+	}
+
+	/**
+	 * Looks up every Frontend bound in the registry under the prefix, other than
+	 * those already dropped.
+	 * @throws RemoteException if no Frontend could be found
+	 */
+	private synchronized void lookup() throws RemoteException {
+		this.servers.clear();
+		for (String name : this.registry.list()) {
+			if (!name.startsWith(this.prefix))
+				continue;
+			try {
+				IAuction server = (IAuction) this.registry.lookup(name);
+				if (!this.dropped.contains(server))
+					this.servers.add(server);
+			} catch (NotBoundException e) {
+				// Unbound since listing, skip it
+			}
+		}
+		if (this.servers.isEmpty())
+			throw new ConnectException("No Frontend bound as " + this.prefix);
+	}
+
+	/**
+	 * Returns the next Frontend to call.
+	 * @return the next Frontend
+	 * @throws RemoteException if no Frontend could be found
+	 */
+	private synchronized IAuction nextServer() throws RemoteException {
+		if (this.servers.isEmpty())
+			this.lookup();
+		this.next = (this.next + 1) % this.servers.size();
+		return this.servers.get(this.next);
+	}
+
+	/**
+	 * Drops a Frontend that couldn't be reached.
+	 * @param server the Frontend to drop
+	 */
+	private synchronized void drop(IAuction server) {
+		this.servers.remove(server);
+		this.dropped.add(server);
+	}
+
+	/**
+	 * Calls a method on the next Frontend, failing over to the others if it can't be
+	 * reached. Calls are only retried if the request never reached the Frontend, or
+	 * if the method doesn't change any state.
+	 */
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class)
+			return method.invoke(this, args);
+
+		boolean readOnly = READ_ONLY.contains(method.getName());
+		RemoteException last = null;
+		for (int attempt = 0; attempt < 3; attempt++) {
+			IAuction server;
+			try {
+				server = this.nextServer();
+			} catch (RemoteException e) {
+				throw last != null ? last : e;
+			}
+			try {
+				return method.invoke(server, args);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				boolean notDelivered = cause instanceof ConnectException || cause instanceof ConnectIOException
+						|| cause instanceof NoSuchObjectException;
+				if (!(cause instanceof RemoteException) || !(notDelivered || readOnly))
+					throw cause;
+				last = (RemoteException) cause;
+				this.drop(server);
+			}
+		}
+		throw last;
+	}
+}
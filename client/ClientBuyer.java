@@ -1,6 +1,6 @@
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.rmi.registry.*;
+import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
 import java.util.Scanner;
 import javax.crypto.Cipher;
@@ -16,10 +16,9 @@ public class ClientBuyer {
 
 	public static void main(String[] args) {		
 		try {
-			// Locate server and create server object
+			// Locate servers and create a server object balanced across them
 			String name = "myserver";
-			Registry registry = LocateRegistry.getRegistry("localhost");
-			IAuction server = (IAuction) registry.lookup(name);
+			IAuction server = AuctionLoadBalancer.connect("localhost", name);
 			Scanner scanner = new Scanner(System.in);
 			Scanner optScan = new Scanner(System.in);
 			Scanner doubScan = new Scanner(System.in);
@@ -27,7 +26,7 @@ public class ClientBuyer {
 			int option = -1;		
 						
 			//Login variables
-			UserAccount thisUser = null;
+			SessionToken session = null;
 			String username = "";
 			String email = "";
 			boolean loggedIn = false;
@@ -53,7 +52,7 @@ public class ClientBuyer {
 					username = scanner.nextLine();
 					System.out.print("Enter Email Address: ");
 					email = scanner.nextLine();
-					System.out.println(server.register(new UserAccount(username, email, "BUYER")));					
+					System.out.println(server.register(new UserAccount(username, email, Role.of(Role.BUYER))));					
 					System.out.println();
 					System.out.print("Press enter to continue...");
 					wait = scanner.nextLine();
@@ -93,8 +92,8 @@ public class ClientBuyer {
 					} 
 					
 					//Validate the challenge and authenticate self
-					thisUser = server.validateChallenge(encodedChallenge, username);					
-					if(thisUser != null) {
+					session = server.validateChallenge(encodedChallenge, username);					
+					if(session != null) {
 						System.out.println("Login Successful.");
 						loggedIn = true;						
 					}
@@ -116,29 +115,39 @@ public class ClientBuyer {
 				}
 			}									
 			
+			//Export a callback to be notified of bids on auctions this user has bid on
+			IAuctionListener listener = (IAuctionListener) UnicastRemoteObject.exportObject(new AuctionListener(), 0);
+			
 			//Auction system user interface post authentication
 			while(true) {			
-				System.out.println("Logged in as " + thisUser.getUsername() + " [" + thisUser.getPrivelige() + "]");
+				System.out.println("Logged in as " + session.getUsername() + " [" + Role.toString(session.getRoles()) + "]");
 				System.out.println("----------------------------------");
 				System.out.println("           Auction System");
 				System.out.println("----------------------------------");
 				System.out.println("1] Browse Auctions.");
-				System.out.println("2] Bid on a listing.");
-				System.out.println("3] Exit program.");
+				System.out.println("2] Search Auctions.");
+				System.out.println("3] Bid on a listing.");
+				System.out.println("4] Place a maximum bid on a listing.");
+				System.out.println("5] View an archived auction.");
+				System.out.println("6] View auctions I have bid on.");
+				System.out.println("7] View an auction's details.");
+				System.out.println("8] Exit program.");
 				System.out.println("----------------------------------");
 				System.out.print("Enter option: ");
 				option = optScan.nextInt();				
 				for(int i = 0; i < 50; i++) System.out.println();
 				
-				System.out.println("Logged in as " + thisUser.getUsername() + " [" + thisUser.getPrivelige() + "]");
+				System.out.println("Logged in as " + session.getUsername() + " [" + Role.toString(session.getRoles()) + "]");
 				System.out.println("----------------------------------");
 				
 				switch(option) {
 				case 1: 
 					System.out.println("            Auctions");
 					System.out.println("----------------------------------");
-					ArrayList<AuctionItem> auctions = server.browseAuctions();
-					for(AuctionItem s: auctions) { 
+					ArrayList<ListingSummary> auctions = server.browseAuctions();
+					if(auctions == null)
+						System.out.println("The server is busy, please try again shortly.");
+					else for(ListingSummary s: auctions) { 
 						System.out.println(s);
 						System.out.println("----------------------------------");
 					}
@@ -150,22 +159,105 @@ public class ClientBuyer {
 					
 					break;					
 				case 2: 
+					System.out.println("         Search Auctions");
+					System.out.println("----------------------------------");
+					System.out.print("Enter text to search for (blank for all): ");
+					String text = scanner.nextLine();
+					System.out.print("Only show live auctions? [Y/N]: ");
+					boolean liveOnly = scanner.nextLine().equals("Y");
+					System.out.print("Sort by [1] Auction ID [2] Highest bid [3] Ending soonest: ");
+					int sort = optScan.nextInt();
+					ListingQuery.Sort order = (sort == 2 ? ListingQuery.Sort.HIGHEST_BID : sort == 3 ? ListingQuery.Sort.ENDING_SOONEST : ListingQuery.Sort.AUCTION_ID);
+					ArrayList<ListingSummary> found = server.searchAuctions(new ListingQuery(text, liveOnly, order));
+					if(found == null)
+						System.out.println("The server is busy, please try again shortly.");
+					else for(ListingSummary s: found) { 
+						System.out.println(s);
+						System.out.println("----------------------------------");
+					}
+					
+					System.out.println();
+					System.out.print("Press enter to continue...");
+					wait = scanner.nextLine();
+					for(int i = 0; i < 50; i++) System.out.println();
+					break;
+				case 3: 
 					System.out.println("        Bid on a listing");
 					System.out.println("----------------------------------");
 					System.out.print("Enter the Auction ID of the item to bid on: ");
 					int aucId = optScan.nextInt();
 					System.out.print("Enter the amount you would like to bid: £");
-					double amount = doubScan.nextDouble();	
-					Bid bid = new Bid(thisUser,amount);
-					String response = server.bidOnItem(aucId, bid);
+					long amount = Money.parse(doubScan.next());
+					String response = server.bidOnItem(session, aucId, amount);
 					System.out.println(response);
+					if(response.equals("Bid registered."))
+						server.subscribe(session, aucId, listener);
 					
 					System.out.println();
 					System.out.print("Press enter to continue...");
 					wait = scanner.nextLine();
 					for(int i = 0; i < 50; i++) System.out.println();					
 					break;
-				case 3: 
+				case 4: 
+					System.out.println("   Place a maximum bid on a listing");
+					System.out.println("----------------------------------");
+					System.out.print("Enter the Auction ID of the item to bid on: ");
+					aucId = optScan.nextInt();
+					System.out.print("Enter the most you would pay, bids are placed for you up to it: £");
+					long maxAmount = Money.parse(doubScan.next());
+					response = server.placeMaxBid(session, aucId, maxAmount);
+					System.out.println(response);
+					if(AuctionItem.changed(response))
+						server.subscribe(session, aucId, listener);
+					
+					System.out.println();
+					System.out.print("Press enter to continue...");
+					wait = scanner.nextLine();
+					for(int i = 0; i < 50; i++) System.out.println();					
+					break;
+				case 5: 
+					System.out.println("     View an archived auction");
+					System.out.println("----------------------------------");
+					System.out.print("Enter the Auction ID of the closed auction: ");
+					aucId = optScan.nextInt();
+					ArchivedAuction archived = server.getArchivedAuction(aucId);
+					System.out.println(archived == null ? "Auction not found in the archive." : archived);
+					
+					System.out.println();
+					System.out.print("Press enter to continue...");
+					wait = scanner.nextLine();
+					for(int i = 0; i < 50; i++) System.out.println();					
+					break;
+				case 6: 
+					System.out.println("            My bids");
+					System.out.println("----------------------------------");
+					ArrayList<ListingSummary> bidOn = server.getMyBids(session, 0, 20);
+					if(bidOn == null)
+						System.out.println("The server is busy or your session has expired, please try again shortly.");
+					else for(ListingSummary s: bidOn) { 
+						System.out.println(s);
+						System.out.println("----------------------------------");
+					}
+					
+					System.out.println();
+					System.out.print("Press enter to continue...");
+					wait = scanner.nextLine();
+					for(int i = 0; i < 50; i++) System.out.println();
+					break;
+				case 7: 
+					System.out.println("      View an auction's details");
+					System.out.println("----------------------------------");
+					System.out.print("Enter the Auction ID of the auction: ");
+					aucId = optScan.nextInt();
+					AuctionItem details = server.getAuction(aucId);
+					System.out.println(details == null ? "Auction not found." : details);
+					
+					System.out.println();
+					System.out.print("Press enter to continue...");
+					wait = scanner.nextLine();
+					for(int i = 0; i < 50; i++) System.out.println();					
+					break;
+				case 8: 
 					for(int i = 0; i < 50; i++) System.out.println();		
 					System.exit(0);					
 					break;
@@ -1,6 +1,7 @@
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.rmi.registry.*;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
 import java.util.Scanner;
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
@@ -15,10 +16,9 @@ public class ClientSeller {
 
 	public static void main(String[] args) {		
 		try {
-			// Locate server and create server object
+			// Locate servers and create a server object balanced across them
 			String name = "myserver";
-			Registry registry = LocateRegistry.getRegistry("localhost");
-			IAuction server = (IAuction) registry.lookup(name);
+			IAuction server = AuctionLoadBalancer.connect("localhost", name);
 			Scanner scanner = new Scanner(System.in); //String scanner
 			Scanner optScan = new Scanner(System.in); //Int scanner
 			Scanner doubScan = new Scanner(System.in);//Double scanner
@@ -26,7 +26,7 @@ public class ClientSeller {
 			int option = -1;		
 								
 			//Login variables
-			UserAccount thisUser = null;
+			SessionToken session = null;
 			String username = "";
 			String email = "";
 			boolean loggedIn = false;			
@@ -52,7 +52,7 @@ public class ClientSeller {
 					username = scanner.nextLine();
 					System.out.print("Enter Email Address: ");
 					email = scanner.nextLine();
-					System.out.println(server.register(new UserAccount(username, email, "SELLER")));					
+					System.out.println(server.register(new UserAccount(username, email, Role.of(Role.SELLER))));					
 					System.out.println();
 					System.out.print("Press enter to continue...");
 					wait = scanner.nextLine();					
@@ -90,8 +90,8 @@ public class ClientSeller {
 					} 
 					
 					//Validate the challenge and authenticate self
-					thisUser = server.validateChallenge(encodedChallenge, username);					
-					if(thisUser != null) {
+					session = server.validateChallenge(encodedChallenge, username);					
+					if(session != null) {
 						System.out.println("Login Successful.");
 						loggedIn = true;						
 					}
@@ -112,21 +112,25 @@ public class ClientSeller {
 				for(int i = 0; i < 50; i++) System.out.println();	
 			}			
 			
+			//Export a callback to be notified of bids on this users auctions
+			IAuctionListener listener = (IAuctionListener) UnicastRemoteObject.exportObject(new AuctionListener(), 0);
+			
 			//Auction system user interface post authentication
 			while(true) {
-				System.out.println("Logged in as " + thisUser.getUsername() + " [" + thisUser.getPrivelige() + "]");
+				System.out.println("Logged in as " + session.getUsername() + " [" + Role.toString(session.getRoles()) + "]");
 				System.out.println("----------------------------------");
 				System.out.println("           Auction System");
 				System.out.println("----------------------------------");
 				System.out.println("1] Create a new listing.");
 				System.out.println("2] Close a listing.");
-				System.out.println("3] Exit program.");
+				System.out.println("3] View my listings.");
+				System.out.println("4] Exit program.");
 				System.out.println("----------------------------------");
 				System.out.print("Enter option: ");
 				option = optScan.nextInt();	
 				for(int i = 0; i < 50; i++) System.out.println();
 				
-				System.out.println("Logged in as " + thisUser.getUsername() + " [" + thisUser.getPrivelige() + "]");
+				System.out.println("Logged in as " + session.getUsername() + " [" + Role.toString(session.getRoles()) + "]");
 				System.out.println("----------------------------------");
 				
 				switch(option) {
@@ -141,15 +145,34 @@ public class ClientSeller {
 					String itemCond = scanner.nextLine();
 					boolean condition = (itemCond.equals("Y") ? true : false);
 					System.out.print("Enter starting price for the item: £");
-					double startingPrice = doubScan.nextDouble();
+					long startingPrice = Money.parse(doubScan.next());
 					System.out.print("Enter reserve price for the item: £");
-					double reservePrice = doubScan.nextDouble();
+					long reservePrice = Money.parse(doubScan.next());
+					System.out.print("Enter auction duration in minutes (0 for no end time): ");
+					int duration = optScan.nextInt();
+					long endTime = (duration > 0 ? System.currentTimeMillis() + duration * 60000L : 0);
+					System.out.print("Enter auction type [1] English [2] Sealed first price [3] Sealed second price [4] Dutch: ");
+					int type = optScan.nextInt();
 					
-					AuctionItem item = new AuctionItem(thisUser, itemName, itemDesc, condition, startingPrice, reservePrice);
-					int id = server.createAuction(item);					 
+					//The owner is assigned from the session by the server
+					AuctionItem item = new AuctionItem(null, itemName, itemDesc, condition, startingPrice, reservePrice, endTime);
+					if(type == 2)
+						item.setAuctionType(SealedBidAuction.FIRST_PRICE);
+					else if(type == 3)
+						item.setAuctionType(SealedBidAuction.SECOND_PRICE);
+					else if(type == 4) {
+						System.out.print("Enter the amount the price drops by: £");
+						long decrement = Money.parse(doubScan.next());
+						System.out.print("Enter the seconds between price drops: ");
+						int interval = optScan.nextInt();
+						item.setAuctionType(new DutchAuction(decrement, interval * 1000L));
+					}
+					int id = server.createAuction(session, item);					 
 										
-					if(id > 0) 
+					if(id > 0) {
 						System.out.println("Item put up for auction under ID " + id + ".");
+						server.subscribe(session, id, listener);
+					}
 					else
 						System.out.println("You do not have permissions to create a new listing.");
 					
@@ -163,13 +186,29 @@ public class ClientSeller {
 					System.out.println("----------------------------------");				
 					System.out.print("Enter listing to close: ");
 					int listingClose = optScan.nextInt();					
-					System.out.println(server.closeAuction(listingClose, thisUser));						
+					System.out.println(server.closeAuction(session, listingClose));						
 					System.out.println();
 					System.out.print("Press enter to continue...");
 					wait = scanner.nextLine();					
 					for(int i = 0; i < 50; i++) System.out.println();
 					break;
-				case 3:					
+				case 3: 
+					System.out.println("          My listings");
+					System.out.println("----------------------------------");
+					ArrayList<ListingSummary> listings = server.getMyListings(session, 0, 20);
+					if(listings == null)
+						System.out.println("The server is busy or your session has expired, please try again shortly.");
+					else for(ListingSummary s: listings) { 
+						System.out.println(s);
+						System.out.println("----------------------------------");
+					}
+					
+					System.out.println();
+					System.out.print("Press enter to continue...");
+					wait = scanner.nextLine();
+					for(int i = 0; i < 50; i++) System.out.println();
+					break;
+				case 4:					
 					for(int i = 0; i < 50; i++) System.out.println();	
 					System.exit(0);					
 					break;
@@ -0,0 +1,156 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides at the RMI entry point of a Frontend whether a call is let through to
+ * the Backends. Each call to the Backends is sent to every replica, so a single
+ * client calling in a loop can load the whole group. Every caller has a token
+ * bucket per operation, so one user can't take more than their share, and the
+ * number of calls in flight across all callers is capped, so under overload the
+ * calls over the cap are turned away at once rather than every call queueing
+ * until it times out.
+ *
+ * The rate of an operation is read from "limit.&lt;op&gt;.perSecond" and the
+ * burst a caller can save up from "limit.&lt;op&gt;.burst", where a rate of 0
+ * turns off rate limiting for the operation. The cap on calls in flight is read
+ * from "limit.maxInFlight", and a call waits up to "limit.queueMs" for a slot.
+ * @author Thomas Watkins
+ */
+public class AdmissionControl {
+
+	private static final long IDLE_MILLIS = 60000;
+	private static final TokenBucket UNLIMITED = new TokenBucket(0, 0);
+
+	private final Metrics metrics;
+	private final Semaphore inFlight;
+	private final long queueNanos;
+	private final ConcurrentHashMap<String, TokenBucket> buckets;
+
+	/**
+	 * Constructor. Creates an AdmissionControl configured from the system properties.
+	 * @param metrics the metrics to record rejected calls to
+	 */
+	public AdmissionControl(Metrics metrics) {
+		this.metrics = metrics;
+		this.inFlight = new Semaphore(Math.max(1, Integer.getInteger("limit.maxInFlight", 128)));
+		this.queueNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("limit.queueMs", 50));
+		this.buckets = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Admits a call if the caller is within its rate for the operation and there
+	 * is a free slot. An admitted call must be followed by {@link #release()}.
+	 * @param op     the name of the IAuction operation
+	 * @param caller identifies the caller, e.g. their username or host
+	 * @return true if the call was admitted
+	 */
+	public boolean tryAcquire(String op, String caller) {
+		TokenBucket bucket = this.buckets.computeIfAbsent(op + "/" + caller, k -> newBucket(op));
+		if (bucket != UNLIMITED && !bucket.take()) {
+			this.metrics.increment("admission." + op + ".rateLimited");
+			return false;
+		}
+
+		long start = System.nanoTime();
+		boolean admitted;
+		try {
+			admitted = this.inFlight.tryAcquire(this.queueNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			admitted = false;
+		}
+		this.metrics.recordSince("admission.wait", start);
+		if (!admitted)
+			this.metrics.increment("admission." + op + ".shed");
+		return admitted;
+	}
+
+	/**
+	 * Frees the slot taken by an admitted call.
+	 */
+	public void release() {
+		this.inFlight.release();
+	}
+
+	/**
+	 * Forgets the buckets of callers that have been idle long enough to have
+	 * refilled, so the number of buckets stays bounded by the active callers.
+	 */
+	public void evictIdle() {
+		long now = System.nanoTime();
+		this.buckets.values().removeIf(b -> b.isIdle(now));
+	}
+
+	/**
+	 * Creates the bucket for a caller of an operation.
+	 * @param op the name of the IAuction operation
+	 * @return the bucket, or UNLIMITED if the operation isn't rate limited
+	 */
+	private static TokenBucket newBucket(String op) {
+		double rate = Double.parseDouble(System.getProperty("limit." + op + ".perSecond", defaultRate(op)));
+		if (rate <= 0)
+			return UNLIMITED;
+		int burst = Integer.getInteger("limit." + op + ".burst", (int) Math.ceil(rate * 2));
+		return new TokenBucket(rate, Math.max(1, burst));
+	}
+
+	/**
+	 * Returns the default rate of an operation. Logging in is the most expensive
+	 * call, as every challenge is written to the replicated state.
+	 * @param op the name of the IAuction operation
+	 * @return the calls per second allowed per caller
+	 */
+	private static String defaultRate(String op) {
+		switch (op) {
+		case "getChallenge":
+		case "validateChallenge":
+		case "register":
+			return "5";
+		case "bidOnItem":
+		case "placeMaxBid":
+		case "createAuction":
+		case "closeAuction":
+			return "10";
+		default:
+			return "20";
+		}
+	}
+
+	/**
+	 * A token bucket holding up to a burst of tokens and refilled at a fixed rate.
+	 */
+	private static class TokenBucket {
+
+		private final double tokensPerNano;
+		private final int burst;
+		private double tokens;
+		private long last;
+
+		TokenBucket(double perSecond, int burst) {
+			this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+			this.burst = burst;
+			this.tokens = burst;
+			this.last = System.nanoTime();
+		}
+
+		/**
+		 * Takes a token if there is one.
+		 * @return true if a token was taken
+		 */
+		synchronized boolean take() {
+			long now = System.nanoTime();
+			this.tokens = Math.min(this.burst, this.tokens + (now - this.last) * this.tokensPerNano);
+			this.last = now;
+			if (this.tokens < 1)
+				return false;
+			this.tokens--;
+			return true;
+		}
+
+		synchronized boolean isIdle(long now) {
+			return now - this.last > TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS)
+					&& this.tokens + (now - this.last) * this.tokensPerNano >= this.burst;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The cold tier closed auctions are moved to once they no longer need to be
+ * served with the live ones. Archived auctions are appended to a file and only
+ * their positions are kept in memory, so a lookup by auction ID is a single read.
+ *
+ * Each record is the length of the auction followed by the auction as written by
+ * {@link ArchivedAuction#writeTo(java.io.DataOutput)}, which starts with its
+ * auction ID. If an auction is archived twice the later record is used.
+ * @author Thomas Watkins
+ */
+public class ArchiveStore {
+
+	private static final int HEADER = Integer.BYTES * 2;
+
+	private final FileChannel file;
+	private final HashMap<Integer, Long> index;
+	private long size;
+
+	/**
+	 * Constructor. Creates an ArchiveStore, opening the archive file and indexing
+	 * the auctions already in it. A record left half written by a crash is cut off.
+	 * @param path the archive file, or null for a temporary file deleted on exit
+	 * @throws IOException if the archive file could not be opened
+	 */
+	public ArchiveStore(String path) throws IOException {
+		Path p;
+		if (path == null) {
+			p = Files.createTempFile("archive", ".dat");
+			p.toFile().deleteOnExit();
+		} else {
+			p = Paths.get(path);
+		}
+		this.file = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.index = new HashMap<>();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		long position = 0;
+		long end = this.file.size();
+		while (true) {
+			header.clear();
+			while (header.hasRemaining() && this.file.read(header, position + header.position()) >= 0)
+				;
+			if (header.hasRemaining() || position + Integer.BYTES + header.getInt(0) > end)
+				break;
+			this.index.put(header.getInt(Integer.BYTES), position);
+			position += Integer.BYTES + header.getInt(0);
+		}
+		this.file.truncate(position);
+		this.size = position;
+	}
+
+	/**
+	 * Appends archived auctions in a single write.
+	 * @param auctions the archived auctions
+	 * @throws IOException if the auctions could not be written, in which case none are indexed
+	 */
+	public synchronized void put(List<ArchivedAuction> auctions) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		long[] positions = new long[auctions.size()];
+		for (int i = 0; i < auctions.size(); i++) {
+			positions[i] = this.size + out.size();
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			auctions.get(i).writeTo(new DataOutputStream(record));
+			out.writeInt(record.size());
+			record.writeTo(out);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		while (buffer.hasRemaining())
+			this.file.write(buffer, this.size + buffer.position());
+		this.file.force(false);
+		this.size += buffer.capacity();
+		for (int i = 0; i < auctions.size(); i++)
+			this.index.put(auctions.get(i).getAuctionId(), positions[i]);
+	}
+
+	/**
+	 * Returns an archived auction.
+	 * @param auctionId the auction ID
+	 * @return          the archived auction, or null if it isn't archived here
+	 */
+	public ArchivedAuction get(int auctionId) throws IOException {
+		Long position;
+		synchronized (this) {
+			position = this.index.get(auctionId);
+		}
+		if (position == null)
+			return null;
+		ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+		while (length.hasRemaining() && this.file.read(length, position + length.position()) >= 0)
+			;
+		ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+		while (record.hasRemaining() && this.file.read(record, position + Integer.BYTES + record.position()) >= 0)
+			;
+		return ArchivedAuction.readFrom(new DataInputStream(new ByteArrayInputStream(record.array())));
+	}
+
+	/**
+	 * Returns the number of auctions archived here.
+	 * @return the number of archived auctions
+	 */
+	public synchronized int size() {
+		return this.index.size();
+	}
+
+	/**
+	 * Closes the archive file.
+	 */
+	public void close() {
+		try {
+			this.file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
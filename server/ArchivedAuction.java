@@ -0,0 +1,115 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * The compact record a closed auction is archived as: who sold it, who won it
+ * and for how much, and how many bids were placed. The bids themselves aren't kept.
+ * @author Thomas Watkins
+ */
+public class ArchivedAuction implements Serializable {
+
+	private static final long serialVersionUID = 3688143813654364500L;
+
+	private int auctionId;
+	private String itemName;
+	private String seller;
+	private String winner;
+	private long finalPrice;
+	private int bidCount;
+	private String type;
+
+	/**
+	 * Constructor. Creates an ArchivedAuction from a closed listing.
+	 * @param item the closed listing
+	 */
+	public ArchivedAuction(AuctionItem item) {
+		Bid winning = item.getWinningBid();
+		this.auctionId = item.getAuctionID();
+		this.itemName = item.getItemName();
+		this.seller = item.getOwner().getUsername();
+		this.winner = winning == null ? null : winning.getBidder().getUsername();
+		this.finalPrice = winning == null ? 0 : winning.getAmount();
+		this.bidCount = item.getBidCount();
+		this.type = item.getAuctionType().describe();
+	}
+
+	private ArchivedAuction() {
+	}
+
+	/**
+	 * Returns the auction ID of the archived auction.
+	 * @return the auction ID
+	 */
+	public int getAuctionId() {
+		return this.auctionId;
+	}
+
+	/**
+	 * Returns the username of the winner.
+	 * @return the winner, or null if the reserve was not met
+	 */
+	public String getWinner() {
+		return this.winner;
+	}
+
+	/**
+	 * Returns the price the auction was won at.
+	 * @return the final price in pence, 0 if the reserve was not met
+	 */
+	public long getFinalPrice() {
+		return this.finalPrice;
+	}
+
+	/**
+	 * Returns the number of bids placed.
+	 * @return the number of bids
+	 */
+	public int getBidCount() {
+		return this.bidCount;
+	}
+
+	/**
+	 * Writes this record in the archive file format.
+	 * @param out the output to write to
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(this.auctionId);
+		out.writeUTF(this.itemName);
+		out.writeUTF(this.seller);
+		out.writeUTF(this.winner == null ? "" : this.winner);
+		out.writeLong(this.finalPrice);
+		out.writeInt(this.bidCount);
+		out.writeUTF(this.type);
+	}
+
+	/**
+	 * Reads a record written by {@link #writeTo(DataOutput)}.
+	 * @param in the input to read from
+	 * @return   the record
+	 */
+	public static ArchivedAuction readFrom(DataInput in) throws IOException {
+		ArchivedAuction a = new ArchivedAuction();
+		a.auctionId = in.readInt();
+		a.itemName = in.readUTF();
+		a.seller = in.readUTF();
+		a.winner = in.readUTF();
+		if (a.winner.isEmpty())
+			a.winner = null;
+		a.finalPrice = in.readLong();
+		a.bidCount = in.readInt();
+		a.type = in.readUTF();
+		return a;
+	}
+
+	/**
+	 * Overriding the toString method to display this archived auction.
+	 * @return this archived auction as a string
+	 */
+	public String toString() {
+		return "Auction ID: " + this.auctionId + "\n" + "Seller: " + this.seller + "\n" + "Item: " + this.itemName + "\n"
+				+ "Type: " + this.type + "\n" + "Bids: " + this.bidCount + "\n" + "Staus: ARCHIVED" + "\n"
+				+ (this.winner == null ? "Winner: Reserve not met" : "Winner: " + this.winner + " for £" + Money.format(this.finalPrice));
+	}
+}
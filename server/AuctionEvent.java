@@ -0,0 +1,70 @@
+import java.io.Serializable;
+
+/**
+ * A compact event pushed to clients subscribed to an auction.
+ * @author Thomas Watkins
+ */
+public class AuctionEvent implements Serializable {
+
+	private static final long serialVersionUID = 7991580872946207268L;
+
+	/**
+	 * The types of event that can occur on an auction.
+	 */
+	public enum Type {
+		NEW_HIGHEST_BID, OUTBID, CLOSED
+	}
+
+	private Type type;
+	private int auctionId;
+	private String username;
+	private long amount;
+	private String message;
+
+	/**
+	 * Constructor. Creates an AuctionEvent.
+	 * @param type      the type of event
+	 * @param auctionId the auction ID of the auction the event occurred on
+	 * @param username  the bidder for bid events or null
+	 * @param amount    the highest bid in pence for bid events or 0
+	 * @param message   the winner message for closed events or null
+	 */
+	public AuctionEvent(Type type, int auctionId, String username, long amount, String message) {
+		this.type = type;
+		this.auctionId = auctionId;
+		this.username = username;
+		this.amount = amount;
+		this.message = message;
+	}
+
+	/**
+	 * Returns the type of this event.
+	 * @return the type of this event
+	 */
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns the auction ID of the auction this event occurred on.
+	 * @return the auction ID
+	 */
+	public int getAuctionId() {
+		return this.auctionId;
+	}
+
+	/**
+	 * Overriding the toString method to display this event.
+	 * @return this event as a string
+	 */
+	public String toString() {
+		switch (type) {
+		case NEW_HIGHEST_BID:
+			return "Auction " + auctionId + ": new highest bid of £" + Money.format(amount) + " by " + username + ".";
+		case OUTBID:
+			return "Auction " + auctionId + ": you have been outbid with £" + Money.format(amount) + " by " + username + ".";
+		default:
+			return message;
+		}
+	}
+}
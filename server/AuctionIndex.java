@@ -0,0 +1,102 @@
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable index from a users client ID to the auction IDs of the auctions
+ * they are linked to, such as those they sell or have bid on. Each user has their
+ * own persistent set of auction IDs, so adding or removing one copies only the
+ * path to it, and looking up a user costs the number of auctions they have
+ * rather than the number of listings.
+ * @author Thomas Watkins
+ */
+public final class AuctionIndex implements Serializable {
+
+	private static final long serialVersionUID = 4744183865197395425L;
+
+	private static final AuctionIndex EMPTY = new AuctionIndex(PersistentIntMap.empty());
+
+	private final PersistentIntMap<PersistentIntMap<Boolean>> entries;
+
+	private AuctionIndex(PersistentIntMap<PersistentIntMap<Boolean>> entries) {
+		this.entries = entries;
+	}
+
+	/**
+	 * Returns the empty index.
+	 * @return the empty index
+	 */
+	public static AuctionIndex empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Returns an index with an auction linked to a user.
+	 * @param clientId  the client ID of the user
+	 * @param auctionId the auction ID
+	 * @return the new index, or this index if the auction is already linked
+	 */
+	public AuctionIndex plus(int clientId, int auctionId) {
+		PersistentIntMap<Boolean> auctions = this.entries.get(clientId);
+		if (auctions == null)
+			auctions = PersistentIntMap.empty();
+		else if (auctions.containsKey(auctionId))
+			return this;
+		return new AuctionIndex(this.entries.plus(clientId, auctions.plus(auctionId, Boolean.TRUE)));
+	}
+
+	/**
+	 * Returns an index with an auction no longer linked to a user.
+	 * @param clientId  the client ID of the user
+	 * @param auctionId the auction ID
+	 * @return the new index, or this index if the auction isn't linked
+	 */
+	public AuctionIndex minus(int clientId, int auctionId) {
+		PersistentIntMap<Boolean> auctions = this.entries.get(clientId);
+		if (auctions == null || !auctions.containsKey(auctionId))
+			return this;
+		auctions = auctions.minus(auctionId);
+		return new AuctionIndex(auctions.size() == 0 ? this.entries.minus(clientId) : this.entries.plus(clientId, auctions));
+	}
+
+	/**
+	 * Returns the auctions linked to a user, newest first.
+	 * @param clientId the client ID of the user
+	 * @return the auction IDs in descending order
+	 */
+	public int[] get(int clientId) {
+		PersistentIntMap<Boolean> auctions = this.entries.get(clientId);
+		if (auctions == null)
+			return new int[0];
+		int[] ids = new int[auctions.size()];
+		int[] i = { 0 };
+		auctions.forEach((k, v) -> ids[i[0]++] = k);
+		Arrays.sort(ids);
+		for (int l = 0, r = ids.length - 1; l < r; l++, r--) {
+			int t = ids[l];
+			ids[l] = ids[r];
+			ids[r] = t;
+		}
+		return ids;
+	}
+
+	/**
+	 * Overriding the equals method. Indexes are equal if they link the same auctions to the same users.
+	 * @param obj the AuctionIndex to be compared
+	 * @return true if this AuctionIndex and the comparison object are equal
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		return this.entries.equals(((AuctionIndex) obj).entries);
+	}
+
+	/**
+	 * Overriding the hashCode method to be consistent with equals.
+	 * @return the hash code of this AuctionIndex
+	 */
+	public int hashCode() {
+		return this.entries.hashCode();
+	}
+}
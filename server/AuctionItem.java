@@ -1,24 +1,51 @@
 import java.io.Serializable;
 import java.util.Date;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Set;
 
 /**
  * Implementation of an item to be auctioned. Keeps state of bids and the
  * owner of the auction.
+ *
+ * How bids are accepted and the winner is decided is left to the listings
+ * {@link AuctionType}, English unless another is set. This class keeps the rules
+ * every type shares: no bids once the auction is closed or past its end time,
+ * and late bids extend the end time.
  * @author Thomas Watkins
  */
 public class AuctionItem implements Serializable {
+
+	// Kept from the version without maximum bids or auction types so existing state can still be read
+	private static final long serialVersionUID = 3885043505770158343L;
 	
+	/** The result of a bid that is now the highest bid. */
+	public static final String BID_REGISTERED = "Bid registered.";
+	/** The result of a bid that was topped straight away by the highest bidders maximum bid. */
+	public static final String BID_OUTBID = "Bid not registered as another bidder has placed a higher maximum bid.";
+	/** The result of the highest bidder raising their maximum bid. */
+	public static final String MAX_RAISED = "Maximum bid raised.";
+	/** The result of a sealed bid being accepted. */
+	public static final String BID_SEALED = "Sealed bid registered, bids are revealed when the auction closes.";
+
 	private int auctionID;
 	private UserAccount owner;
 	private String itemName;
 	private String itemDescription;
 	private boolean condition;
-	private double startingPrice;
-	private double reservePrice;
+	private long startingPrice;
+	private long reservePrice;
+	private long minIncrement = 1;
 	private ArrayList<Bid> bids;
+	private Bid maxBid;
 	private boolean live;
+	private long endTime;
+	private long startTime;
+	private AuctionType type;
+	private PersistentIntMap<Bid> sealedBids;
+	private PersistentIntMap<Boolean> bidders;
+	private transient int hash;
 	
 	/**
 	 * Constructor. Creates an Auction item.
@@ -26,10 +53,10 @@ public class AuctionItem implements Serializable {
 	 * @param itemName        the name of the item 
 	 * @param itemDescription the description of the item 
 	 * @param condition       the condition of the item 
-	 * @param startingPrice   the starting price of the item 
-	 * @param reservePrice    the minimum reserve price of the item
+	 * @param startingPrice   the starting price of the item in pence
+	 * @param reservePrice    the minimum reserve price of the item in pence
 	 */
-	public AuctionItem(UserAccount owner, String itemName, String itemDescription, boolean condition, double startingPrice, double reservePrice) {
+	public AuctionItem(UserAccount owner, String itemName, String itemDescription, boolean condition, long startingPrice, long reservePrice) {
 		this.owner = owner;
 		this.itemName = itemName;
 		this.itemDescription = itemDescription;
@@ -39,7 +66,78 @@ public class AuctionItem implements Serializable {
 		this.bids = new ArrayList<>();
 		this.live = true;
 	}	
+
+	/**
+	 * Constructor. Creates a timed Auction item that closes automatically.
+	 * @param owner           the owner of this auction
+	 * @param itemName        the name of the item 
+	 * @param itemDescription the description of the item 
+	 * @param condition       the condition of the item 
+	 * @param startingPrice   the starting price of the item in pence
+	 * @param reservePrice    the minimum reserve price of the item in pence
+	 * @param endTime         the time the auction ends in milliseconds since the epoch, 0 for no end time
+	 */
+	public AuctionItem(UserAccount owner, String itemName, String itemDescription, boolean condition, long startingPrice, long reservePrice, long endTime) {
+		this(owner, itemName, itemDescription, condition, startingPrice, reservePrice);
+		this.endTime = endTime;
+	}
 	
+	/**
+	 * Returns a copy of this auction item that can be changed without affecting
+	 * this one. Bids are shared as they aren't changed once placed.
+	 * @return the copy of this auction item
+	 */
+	public AuctionItem copy() {
+		AuctionItem copy = new AuctionItem(owner, itemName, itemDescription, condition, startingPrice, reservePrice, endTime);
+		copy.auctionID = auctionID;
+		copy.minIncrement = minIncrement;
+		copy.bids = new ArrayList<>(bids);
+		copy.maxBid = maxBid;
+		copy.live = live;
+		copy.startTime = startTime;
+		copy.type = type;
+		copy.sealedBids = sealedBids;
+		copy.bidders = bidders;
+		return copy;
+	}
+
+	/**
+	 * Returns this auction item as it is shown to clients, without the hidden
+	 * maximum bid of the highest bidder, the client IDs of everyone who has bid
+	 * or, while the auction is live, the sealed bids.
+	 * @return this auction item, or a copy of it if anything is hidden
+	 */
+	public AuctionItem forDisplay() {
+		boolean sealed = live && getSealedBids().size() > 0;
+		if (maxBid == null && bidders == null && !sealed)
+			return this;
+		AuctionItem copy = copy();
+		copy.maxBid = null;
+		copy.bidders = null;
+		if (sealed)
+			copy.sealedBids = null;
+		return copy;
+	}
+
+	/**
+	 * Returns whether the result of a bid means the listing changed.
+	 * @param result the result of {@link #bid(Bid)}
+	 * @return true if a bid was registered, a maximum bid was changed or the bid won the auction
+	 */
+	public static boolean changed(String result) {
+		return BID_REGISTERED.equals(result) || BID_OUTBID.equals(result) || MAX_RAISED.equals(result)
+				|| BID_SEALED.equals(result) || isWin(result);
+	}
+
+	/**
+	 * Returns whether the result of a bid is that it won and closed the auction.
+	 * @param result the result of {@link #bid(Bid)}
+	 * @return true if the bid won the auction
+	 */
+	public static boolean isWin(String result) {
+		return result != null && result.startsWith("The winner of auction ");
+	}
+
 	/**
 	 * Returns the owner of the auction.
 	 * @return the owner of the auction.
@@ -47,6 +145,15 @@ public class AuctionItem implements Serializable {
 	public UserAccount getOwner() {
 		return this.owner;
 	}
+
+	/**
+	 * Sets the owner of the auction to the registered account of the authenticated seller.
+	 * @param owner the owner of the auction
+	 */
+	public void setOwner(UserAccount owner) {
+		this.owner = owner;
+		this.hash = 0;
+	}
 	
 	/**
 	 * Returns the Auction ID of the auction.
@@ -55,57 +162,297 @@ public class AuctionItem implements Serializable {
 	 */
 	public void setAuctionID(int auctionID) {
 		this.auctionID = auctionID;
+		this.hash = 0;
 	}	
+
+	/**
+	 * Returns the Auction ID of the auction.
+	 * @return the auction id of the auction
+	 */
+	public int getAuctionID() {
+		return this.auctionID;
+	}
+
+	/**
+	 * Returns the name of the item.
+	 * @return the name of the item
+	 */
+	public String getItemName() {
+		return this.itemName;
+	}
+
+	/**
+	 * Returns the description of the item.
+	 * @return the description of the item
+	 */
+	public String getItemDescription() {
+		return this.itemDescription;
+	}
+
+	/**
+	 * Returns the highest bid, or the starting price if there are no bids.
+	 * @return the highest bid in pence
+	 */
+	public long getHighestBid() {
+		return bids.size() > 0 ? bids.get(bids.size() - 1).getAmount() : startingPrice;
+	}
+
+	/**
+	 * Returns the highest bid placed.
+	 * @return the highest bid, or null if there are no bids
+	 */
+	public Bid getLeadingBid() {
+		return bids.size() > 0 ? bids.get(bids.size() - 1) : null;
+	}
+
+	/**
+	 * Returns the winning bid of a closed auction.
+	 * @return the highest bid if the auction is closed and it met the reserve, otherwise null
+	 */
+	public Bid getWinningBid() {
+		Bid leading = getLeadingBid();
+		return !live && leading != null && leading.getAmount() >= reservePrice ? leading : null;
+	}
+
+	/**
+	 * Returns the number of bids placed, counting each sealed bid once.
+	 * @return the number of bids
+	 */
+	public int getBidCount() {
+		return getSealedBids().size() > 0 ? getSealedBids().size() : bids.size();
+	}
+
+	/**
+	 * Returns the client IDs of everyone who has bid on this auction, including
+	 * bidders whose bid was topped straight away by a maximum bid and so isn't held.
+	 * @return the client IDs of the bidders
+	 */
+	public Set<Integer> getBidderIds() {
+		Set<Integer> bidders = new HashSet<>();
+		getBidders().forEach((k, v) -> bidders.add(k));
+		// Items from before every bidder was recorded only know the bidders whose bids they hold
+		for (Bid b : bids)
+			bidders.add(b.getBidder().getClientId());
+		getSealedBids().forEach((k, v) -> bidders.add(k));
+		if (maxBid != null)
+			bidders.add(maxBid.getBidder().getClientId());
+		return bidders;
+	}
+
+	/**
+	 * Returns the starting price of the item.
+	 * @return the starting price in pence
+	 */
+	public long getStartingPrice() {
+		return this.startingPrice;
+	}
+
+	/**
+	 * Returns the reserve price of the item.
+	 * @return the reserve price in pence
+	 */
+	public long getReservePrice() {
+		return this.reservePrice;
+	}
+
+	/**
+	 * Returns the amount each bid must exceed the previous highest bid by.
+	 * @return the minimum increment in pence
+	 */
+	public long getMinIncrement() {
+		return this.minIncrement;
+	}
+
+	/**
+	 * Returns the type of auction, which decides how bids are accepted and who wins.
+	 * @return the type of auction, English if none was set
+	 */
+	public AuctionType getAuctionType() {
+		return this.type == null ? EnglishAuction.INSTANCE : this.type;
+	}
+
+	/**
+	 * Sets the type of auction. Must be set before any bids are placed.
+	 * @param type the type of auction
+	 */
+	public void setAuctionType(AuctionType type) {
+		this.type = type;
+		this.hash = 0;
+	}
+
+	/**
+	 * Returns the time the auction started, which a Dutch auction prices from.
+	 * @return the time in milliseconds since the epoch, 0 if it was not stamped
+	 */
+	public long getStartTime() {
+		return this.startTime;
+	}
+
+	/**
+	 * Sets the time the auction started, stamped by the Frontend when it is created.
+	 * @param startTime the time in milliseconds since the epoch
+	 */
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+		this.hash = 0;
+	}
+
+	/**
+	 * Returns the maximum bid of the highest bidder, for the auction type.
+	 * @return the maximum bid, or null if none is held
+	 */
+	Bid getMaxBid() {
+		return this.maxBid;
+	}
+
+	/**
+	 * Sets the maximum bid of the highest bidder, for the auction type.
+	 * @param maxBid the maximum bid, or null for none
+	 */
+	void setMaxBid(Bid maxBid) {
+		this.maxBid = maxBid;
+		this.hash = 0;
+	}
+
+	/**
+	 * Returns everyone who has bid on this auction, keyed by client ID.
+	 * @return the bidders, empty if there are none
+	 */
+	private PersistentIntMap<Boolean> getBidders() {
+		return this.bidders == null ? PersistentIntMap.empty() : this.bidders;
+	}
+
+	/**
+	 * Returns the sealed bids, keyed by the client ID of the bidder.
+	 * @return the sealed bids, empty if there are none
+	 */
+	public PersistentIntMap<Bid> getSealedBids() {
+		return this.sealedBids == null ? PersistentIntMap.empty() : this.sealedBids;
+	}
+
+	/**
+	 * Sets the sealed bids, for the auction type.
+	 * @param sealedBids the sealed bids keyed by the client ID of the bidder
+	 */
+	void setSealedBids(PersistentIntMap<Bid> sealedBids) {
+		this.sealedBids = sealedBids;
+		this.hash = 0;
+	}
+
+	/**
+	 * Returns whether the auction is still open for bids.
+	 * @return true if the auction is live
+	 */
+	public boolean isLive() {
+		return this.live;
+	}
+
+	/**
+	 * Sets the amount each bid must exceed the previous highest bid, or the starting price, by.
+	 * @param minIncrement the minimum increment in pence, at least 1
+	 */
+	public void setMinIncrement(long minIncrement) {
+		this.minIncrement = Math.max(1, minIncrement);
+		this.hash = 0;
+	}
+
+	/**
+	 * Returns the time the auction ends, which may be extended by late bids.
+	 * @return the time in milliseconds since the epoch, 0 if the auction has no end time
+	 */
+	public long getEndTime() {
+		return this.endTime;
+	}
 	
 	/**
 	 * Closes an action returning message of the winner or reserve not met message.	  
+	 * The auction type decides the winner first. Closing an auction that is already
+	 * closed changes nothing and returns the same message.
 	 * @return the winner or reserve not met message
 	 */
 	public String closeAuction() {
-		this.live = false;
+		if(this.live) {
+			this.live = false;
+			this.hash = 0;
+			getAuctionType().close(this);
+		}
 		
 		if(bids.size() > 0 && reservePrice <= bids.get(bids.size() -1).getAmount()) 
 			return "The winner of auction " + auctionID + " [" + itemName + "]" +" is " + bids.get(bids.size() -1).getBidder().getUsername() 
-					+ " [" + bids.get(bids.size() -1).getBidder().getEmail() + "] for £" + bids.get(bids.size() -1).getAmount() + ".";		
+					+ " [" + bids.get(bids.size() -1).getBidder().getEmail() + "] for £" + Money.format(bids.get(bids.size() -1).getAmount()) + ".";		
 		
 		return "The reserve for auction " + auctionID + " [" + itemName + "]" + " was not met.";			
 	}
 		
 	/**
-	 * Creates a bid for this auction item if validated.
+	 * Creates a bid for this auction item if validated by the auction type. The
+	 * bidder is recorded if the bid changed the listing, even if it was outbid.
 	 * @param bid the bid to be added
 	 * @return    a success or error message to be displayed to the client
 	 */
 	public String bid(Bid bid) {
-		if(this.live) {
-			if(bids.size() < 1) {
-				if(bid.getAmount() > startingPrice) {
-					bids.add(bid);
-					return "Bid registered.";
-				}
-				else 
-					return "Bid not registered as it is lower than the starting price.";
-			}
-			else if (bids.get(bids.size()-1).getAmount() < bid.getAmount()) {
-				bids.add(bid);
-				return "Bid registered.";
-			}
-			else 
-				return "Bid not registered as it is lower than the current highest bid.";
-			
-		}	 
-		return "This auction is closed.";		
+		if(!this.live || (endTime != 0 && bid.getTime() >= endTime))
+			return "This auction is closed.";
+		String result = getAuctionType().bid(this, bid);
+		if (changed(result) && !getBidders().containsKey(bid.getBidder().getClientId())) {
+			bidders = getBidders().plus(bid.getBidder().getClientId(), Boolean.TRUE);
+			hash = 0;
+		}
+		return result;
 	}
-	
+
+	/**
+	 * Adds a winning bid, extending the end time if the bid was placed in the
+	 * final moments of the auction to prevent sniping.
+	 * @param bid the bid to be added
+	 */
+	void addBid(Bid bid) {
+		bids.add(bid);
+		hash = 0;
+		if(endTime != 0 && endTime - bid.getTime() < Extension.WINDOW)
+			endTime = bid.getTime() + Extension.WINDOW;
+	}
+
+	/**
+	 * Holds the anti-sniping window. The setting is only read once a bid is added,
+	 * so the class can still be loaded where system properties can't be read, such
+	 * as by the RMI registry.
+	 */
+	private static class Extension {
+		/** Bids placed this close to the end of an auction extend it by the same amount, read from "backend.extensionMs". */
+		static final long WINDOW = Long.getLong("backend.extensionMs", 60000);
+	}
+
+	/**
+	 * Adds the bid that wins the auction as it closes. Unlike {@link #addBid(Bid)}
+	 * the end time is never extended, as the auction is over.
+	 * @param bid the winning bid
+	 */
+	void addWinningBid(Bid bid) {
+		bids.add(bid);
+		hash = 0;
+	}
+
 	/**
 	 * Overriding the toString method to display this auction item.
 	 * @return this auction item as a string
 	 */
 	public String toString() { 
-		double highestBid = (bids.size() > 0 ? bids.get(bids.size()-1).getAmount() : startingPrice);
+		long highestBid = getHighestBid();
 		
 		String auctionItem = "Auction ID: " + auctionID + "\n" + "Seller: " + owner.getUsername() + "\n" + "Item: " + itemName + "\n" + "Description: " + itemDescription + "\n" + 
-				"Condition: " + (condition ? "New" : "Used") + "\n" + "Highest Bid: £" + highestBid + "\n" + "Staus: " + (live ? "LIVE" : "CLOSED");
+				"Condition: " + (condition ? "New" : "Used") + "\n" + "Type: " + getAuctionType().describe() + "\n";
+		
+		if(this.live && this.type instanceof DutchAuction)
+			auctionItem += "Current Price: £" + Money.format(((DutchAuction) this.type).priceAt(this, System.currentTimeMillis())) + "\n";
+		else if(this.live && this.type instanceof SealedBidAuction)
+			auctionItem += "Sealed Bids: " + getSealedBids().size() + "\n";
+		else
+			auctionItem += "Highest Bid: £" + Money.format(highestBid) + "\n";
+		auctionItem += "Staus: " + (live ? "LIVE" : "CLOSED");
+		
+		if(this.live && this.endTime != 0)
+			auctionItem += "\n" + "Ends: " + new Date(this.endTime);
 		
 		if(!this.live) {
 			auctionItem += "\n";
@@ -150,18 +497,67 @@ public class AuctionItem implements Serializable {
 				return false;
 		} else if (!itemName.equals(other.itemName))
 			return false;
+		if (maxBid == null) {
+			if (other.maxBid != null)
+				return false;
+		} else if (!maxBid.equals(other.maxBid))
+			return false;
 		if (live != other.live)
 			return false;
+		if (endTime != other.endTime)
+			return false;
+		if (startTime != other.startTime)
+			return false;
+		if (!getAuctionType().equals(other.getAuctionType()))
+			return false;
+		if (!getSealedBids().equals(other.getSealedBids()))
+			return false;
+		if (!getBidders().equals(other.getBidders()))
+			return false;
 		if (owner == null) {
 			if (other.owner != null)
 				return false;
 		} else if (!owner.equals(other.owner))
 			return false;
-		if (Double.doubleToLongBits(reservePrice) != Double.doubleToLongBits(other.reservePrice))
+		if (reservePrice != other.reservePrice)
 			return false;
-		if (Double.doubleToLongBits(startingPrice) != Double.doubleToLongBits(other.startingPrice))
+		if (startingPrice != other.startingPrice)
+			return false;
+		if (minIncrement != other.minIncrement)
 			return false;
 		return true;
+	}
+
+	/**
+	 * Overriding the hashCode method to be consistent with equals. The hash is
+	 * cached as hashing the bids is linear in their number, and is reset whenever
+	 * the item changes.
+	 * @return the hash code of this AuctionItem
+	 */
+	public int hashCode() {
+		int h = this.hash;
+		if (h == 0) {
+			final int prime = 31;
+			h = 1;
+			h = prime * h + auctionID;
+			h = prime * h + ((bids == null) ? 0 : bids.hashCode());
+			h = prime * h + (condition ? 1231 : 1237);
+			h = prime * h + ((itemDescription == null) ? 0 : itemDescription.hashCode());
+			h = prime * h + ((itemName == null) ? 0 : itemName.hashCode());
+			h = prime * h + ((maxBid == null) ? 0 : maxBid.hashCode());
+			h = prime * h + (live ? 1231 : 1237);
+			h = prime * h + Long.hashCode(endTime);
+			h = prime * h + Long.hashCode(startTime);
+			h = prime * h + getAuctionType().hashCode();
+			h = prime * h + getSealedBids().hashCode();
+			h = prime * h + getBidders().hashCode();
+			h = prime * h + ((owner == null) ? 0 : owner.hashCode());
+			h = prime * h + Long.hashCode(reservePrice);
+			h = prime * h + Long.hashCode(startingPrice);
+			h = prime * h + Long.hashCode(minIncrement);
+			this.hash = h;
+		}
+		return h;
 	}		
 	
 }
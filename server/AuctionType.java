@@ -0,0 +1,34 @@
+import java.io.Serializable;
+
+/**
+ * The rules of a type of auction: which bids are accepted and how the winner and
+ * price are decided when the auction closes. An AuctionItem hands its bids and
+ * its close to its type. Types hold no state of their own, only settings, so one
+ * instance can be shared by any number of listings. A type is always called with
+ * a listing that the caller may change, and must decide the same way on every
+ * replica, using the time a bid was stamped with rather than the clock.
+ * @author Thomas Watkins
+ */
+public interface AuctionType extends Serializable {
+
+	/**
+	 * Places a bid on a live listing that the bid was placed before the end of.
+	 * @param item the listing
+	 * @param bid  the bid
+	 * @return     a success or error message to be displayed to the client
+	 */
+	public String bid(AuctionItem item, Bid bid);
+
+	/**
+	 * Decides the winner of a listing that is closing, adding the winning bid at
+	 * the price paid as its highest bid. Nothing is added if there is no winner.
+	 * @param item the listing
+	 */
+	public void close(AuctionItem item);
+
+	/**
+	 * Returns the name of this type and any settings, for display.
+	 * @return the description of this type
+	 */
+	public String describe();
+}
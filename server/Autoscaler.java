@@ -0,0 +1,121 @@
+import java.util.function.BooleanSupplier;
+
+/**
+ * Starts and stops local Backends so the size of the group follows load. Load is
+ * sampled from a {@link Membership} every interval: the number of replicated
+ * calls in flight, smoothed over recent samples, and the median Backend response
+ * time. A Backend is started once either signal has stayed above its threshold
+ * for a number of samples in a row, or straight away if fewer than the minimum
+ * number of Backends are live, and one this process started is stopped once both
+ * have stayed below their thresholds as long. After any change the group is given
+ * a cool down period to settle, and a started Backend time to join, before load is
+ * acted on again.
+ *
+ * As every Backend applies every request, extra Backends don't add throughput.
+ * They let more slow Backends be demoted to followers while a majority is still
+ * waited on, and keep the group voting through crashes during a peak.
+ *
+ * Thresholds are read from system properties: "autoscale.min" and "autoscale.max"
+ * Backends, "autoscale.upQueue" and "autoscale.downQueue" calls in flight,
+ * "autoscale.upLatencyMs" and "autoscale.downLatencyMs", "autoscale.samples" and
+ * "autoscale.cooldownMs".
+ * @author Thomas Watkins
+ */
+public class Autoscaler {
+
+	private static final double ALPHA = 0.3;
+	private static final long JOIN_TIMEOUT = 60000;
+
+	private final Membership membership;
+	private final BackendLauncher launcher;
+	private final BooleanSupplier isCoordinator;
+	private final Metrics metrics;
+	private final int min;
+	private final int max;
+	private final double upQueue;
+	private final double downQueue;
+	private final double upLatency;
+	private final double downLatency;
+	private final int samples;
+	private final long cooldown;
+	private double queueDepth;
+	private int above;
+	private int below;
+	private long lastChange;
+	private int starting;
+
+	/**
+	 * Constructor. Creates an Autoscaler.
+	 * @param membership    the membership to read the live Backends and load from
+	 * @param launcher      the launcher to start and stop Backends with
+	 * @param isCoordinator whether this Frontend is the one that scales the group
+	 * @param metrics       the metrics to record starts and stops to
+	 */
+	public Autoscaler(Membership membership, BackendLauncher launcher, BooleanSupplier isCoordinator,
+			Metrics metrics) {
+		this.membership = membership;
+		this.launcher = launcher;
+		this.isCoordinator = isCoordinator;
+		this.metrics = metrics;
+		this.min = Integer.getInteger("autoscale.min", 3);
+		this.max = Integer.getInteger("autoscale.max", 5);
+		this.upQueue = Integer.getInteger("autoscale.upQueue", 16);
+		this.downQueue = Integer.getInteger("autoscale.downQueue", 2);
+		this.upLatency = Integer.getInteger("autoscale.upLatencyMs", 50);
+		this.downLatency = Integer.getInteger("autoscale.downLatencyMs", 10);
+		this.samples = Integer.getInteger("autoscale.samples", 5);
+		this.cooldown = Long.getLong("autoscale.cooldownMs", 15000);
+	}
+
+	/**
+	 * Samples the load and starts or stops a Backend if a threshold has been crossed.
+	 */
+	public synchronized void evaluate() {
+		this.queueDepth += ALPHA * (this.membership.getQueueDepth() - this.queueDepth);
+		// Response times are only updated by traffic, so with nothing in flight the group is idle
+		double latency = this.membership.getQueueDepth() == 0 ? 0 : this.membership.getMedianLatencyMillis();
+		if (this.queueDepth > this.upQueue || latency > this.upLatency) {
+			this.above++;
+			this.below = 0;
+		} else if (this.queueDepth < this.downQueue && latency < this.downLatency) {
+			this.below++;
+			this.above = 0;
+		} else {
+			this.above = 0;
+			this.below = 0;
+		}
+
+		if (!this.isCoordinator.getAsBoolean() || System.currentTimeMillis() - this.lastChange < this.cooldown)
+			return;
+		int live = this.membership.getBackends().size();
+
+		// Wait for a started Backend to join before acting again, it may take a while under load
+		if (live < this.starting && System.currentTimeMillis() - this.lastChange < JOIN_TIMEOUT)
+			return;
+		this.starting = 0;
+		try {
+			if (live < this.min || (this.above >= this.samples && live < this.max)) {
+				System.out.printf("scaling up from %d backends (queue %.1f, latency %.1f ms)\n", live, this.queueDepth,
+						latency);
+				this.launcher.start();
+				this.metrics.increment("autoscale.started");
+				this.changed();
+				this.starting = live + 1;
+			} else if (this.below >= this.samples && live > this.min && this.launcher.stop()) {
+				System.out.printf("scaling down from %d backends (queue %.1f, latency %.1f ms)\n", live,
+						this.queueDepth, latency);
+				this.metrics.increment("autoscale.stopped");
+				this.changed();
+			}
+		} catch (Exception e) {
+			this.metrics.increment("autoscale.errors");
+			e.printStackTrace();
+		}
+	}
+
+	private void changed() {
+		this.lastChange = System.currentTimeMillis();
+		this.above = 0;
+		this.below = 0;
+	}
+}
@@ -2,14 +2,23 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.Base64;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -23,9 +32,9 @@ import org.jgroups.Address;
 import org.jgroups.JChannel;
 import org.jgroups.blocks.RequestOptions;
 import org.jgroups.blocks.ResponseMode;
-import org.jgroups.blocks.RpcDispatcher;
 import org.jgroups.blocks.RspFilter;
 import org.jgroups.util.RspList;
+import org.jgroups.util.Util;
 
 /**
  * A Backend server for an auctioning system used to communicate with a Frontend via JGroups.
@@ -34,45 +43,213 @@ import org.jgroups.util.RspList;
  */
 public class Backend {
 	private JChannel groupChannel;
-	private RpcDispatcher dispatcher;	
+	private QueryDispatcher dispatcher;	
+	private ForkJoinPool queryPool;
+	private Metrics metrics;
+	private ClosingScheduler closingScheduler;
+	private ClosingScheduler archiveScheduler;
+	private ArchiveStore archive;
+	private EventLog events;
+	private ScheduledExecutorService scheduler;
+	private final int CLOSE_GRACE = 2000;
+	private final int CLOSE_INTERVAL = 250;
+	private final int RESYNC_TIMEOUT = 10000;
+	private final int ARCHIVE_INTERVAL = 1000;
+	private final long ARCHIVE_AFTER = Long.getLong("backend.archiveAfterMs", 300000);
+	private final ConcurrentHashMap<Long, CompletableFuture<byte[]>> transfers = new ConcurrentHashMap<>();
+	private final CompletableFuture<Boolean> joined = new CompletableFuture<>();
+	private volatile long joinId;
 
-	private ArrayList<UserAccount> registeredUsers;
-	private Hashtable<Integer, String> challenges;
-	private Hashtable<Integer, AuctionItem> listings;
-	private int auctionCounter;
-	private int clientCounter;
+	/** The file the state is seeded from and written to on shutdown, or null for none. */
+	private static final String SNAPSHOT = System.getProperty("backend.snapshot");
+	/** The file of users registered when there is no snapshot. */
+	private static final String SEED_USERS = System.getProperty("backend.seedUsers", "seed-users.csv");
+	/** The segment file applied events are appended to, or null to keep recent events in memory only. */
+	private static final String EVENT_LOG = System.getProperty("backend.eventLog");
+	/** The file closed auctions are archived to, or null for a temporary file. */
+	private static final String ARCHIVE = System.getProperty("backend.archive");
+
+	private volatile BackendState state;
 
 	/**
-	 * Constructor. Creates a Backend. Connects to the JGroups channel and instantiates state.
-	 * Also pre registers 4 users and ensures state consistency upon creation.
+	 * Constructor. Creates a Backend. Seeds its state, connects to the JGroups channel
+	 * and copies the state of the group if it is not the first Backend to join.
 	 */
 	public Backend() {
+		long start = System.nanoTime();
+		this.metrics = new Metrics("backend");
+		this.closingScheduler = new ClosingScheduler();
+		this.archiveScheduler = new ClosingScheduler();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor();
+		this.queryPool = new ForkJoinPool(Integer.getInteger("query.parallelism", Runtime.getRuntime().availableProcessors()));
+
+		// Instantiate state before joining the group so it is never served half built.
+		// The seed is replaced by the groups state if this isn't the first Backend
+		this.state = this.seed();
+		try {
+			this.events = new EventLog(EVENT_LOG, Integer.getInteger("backend.eventBuffer", 10000),
+					Boolean.getBoolean("backend.eventLogFsync"), this.metrics);
+		} catch (IOException e) {
+			System.err.println("Could not open event log " + EVENT_LOG + " (" + e.getMessage() + ").");
+			System.exit(1);
+		}
+		this.events.rewind(this.state.getEventCounter());
+		try {
+			this.archive = new ArchiveStore(ARCHIVE);
+		} catch (IOException e) {
+			System.err.println("Could not open archive " + ARCHIVE + " (" + e.getMessage() + ").");
+			System.exit(1);
+		}
+		this.reschedule(this.state);
+
 		// Connect to the group (channel)
-		this.groupChannel = GroupUtils.connect();
+		this.groupChannel = GroupUtils.connect(GroupUtils.BACKEND);
 		if (this.groupChannel == null) {
 			System.exit(1); // error to be printed by the 'connect' function
 		}
+		// Commands a Backend sends to the group, such as timed closes, are applied when delivered
+		// back to it, so it applies them at the same point in the command order as every other Backend
+		this.groupChannel.setDiscardOwnMessages(false);
 
 		// Make this instance of Backend a dispatcher in the channel (group)
-		this.dispatcher = new RpcDispatcher(this.groupChannel, this);
+		this.dispatcher = new QueryDispatcher(this.groupChannel, this, () -> this.state, this.queryPool, this.metrics);
+		this.dispatcher.registerQuery("browseAuctionsReq", Backend::browseAuctionsReq);
+		this.dispatcher.registerQuery("searchAuctionsReq", Backend::searchAuctionsReq);
+		this.dispatcher.registerQuery("getAuctionsReq", Backend::getAuctionsReq);
+		this.dispatcher.registerQuery("getAuctionReq", Backend::getAuctionReq);
+		this.dispatcher.registerQuery("listingsBySellerReq", Backend::listingsBySellerReq);
+		this.dispatcher.registerQuery("listingsByBidderReq", Backend::listingsByBidderReq);
+		this.dispatcher.registerQuery("getChallengeState", Backend::getChallengeState);
+		this.dispatcher.registerQuery("stateHashReq", Backend::stateHashReq);
+		this.dispatcher.registerQuery("readEventsReq", this::readEventsReq);
+		this.dispatcher.registerQuery("getArchivedReq", this::getArchivedReq);
+		this.dispatcher.registerQuery("getAllState", this::getAllState);
+		this.metrics.registerMBean(this.groupChannel.getAddressAsString());
+		this.metrics.startHttpEndpoint();
+
+		this.join();
 
-		listings = new Hashtable<>();
-		challenges = new Hashtable<>();
-		registeredUsers = new ArrayList<>();
-		auctionCounter = 1;
-		clientCounter = 1;
+		// Close timed auctions once they have ended
+		this.scheduler.scheduleWithFixedDelay(this::closeEndedAuctions, this.CLOSE_INTERVAL, this.CLOSE_INTERVAL,
+				TimeUnit.MILLISECONDS);
 
-		// Hard code 4 clients and register them
-		UserAccount user1 = new UserAccount("tom", "tom@hotmail.com", "SELLER");
-		UserAccount user2 = new UserAccount("fred", "fred@hotmail.com", "SELLER");
-		UserAccount user3 = new UserAccount("max", "max@hotmail.com", "BUYER");
-		UserAccount user4 = new UserAccount("shaun", "shaun@hotmail.com", "BUYER");
-		registerReq(user1);
-		registerReq(user2);
-		registerReq(user3);
-		registerReq(user4);
+		// Move closed auctions to the archive once they have been closed a while
+		this.scheduler.scheduleWithFixedDelay(this::archiveClosedAuctions, this.ARCHIVE_INTERVAL, this.ARCHIVE_INTERVAL,
+				TimeUnit.MILLISECONDS);
 
-		this.update();
+		// Leave the group on shutdown so the others see a leave rather than a crash
+		Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+
+		this.metrics.recordSince("startup.latency", start);
+		System.out.printf("Backend started in %d ms.\n", (System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * Returns the state this Backend starts with. The state is read from the
+	 * snapshot file if one is configured and exists, otherwise the users listed in
+	 * the seed users file are registered. A seed users key file is only generated
+	 * if the user doesn't already have one.
+	 * @return the seed state
+	 */
+	private BackendState seed() {
+		if (SNAPSHOT != null && Files.exists(Paths.get(SNAPSHOT))) {
+			try {
+				BackendState snapshot = (BackendState) Util.objectFromByteBuffer(Files.readAllBytes(Paths.get(SNAPSHOT)));
+				System.out.println("Seeded state from " + SNAPSHOT + ".");
+				return snapshot;
+			} catch (Exception e) {
+				System.err.println("Could not read snapshot " + SNAPSHOT + " (" + e.getMessage() + "), seeding users.");
+			}
+		}
+
+		// The session signing key is replaced by the groups key if one already exists
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		BackendState seed = new BackendState(Base64.getEncoder().encodeToString(key));
+		if (!Files.exists(Paths.get(SEED_USERS)))
+			return seed;
+		try {
+			// Each line is username,email,roles e.g. tom,tom@hotmail.com,SELLER
+			for (String line : Files.readAllLines(Paths.get(SEED_USERS))) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] fields = line.split(",", 3);
+				UserAccount user = new UserAccount(fields[0].trim(), fields[1].trim(), Role.parse(fields[2].trim()));
+				seed = seed.withNewUser(user);
+				if (!Files.exists(Paths.get("../UsersKeyStore/" + user.getUsername() + ".txt")))
+					generateKeyReq(user);
+			}
+		} catch (IOException | ArrayIndexOutOfBoundsException e) {
+			System.err.println("Could not read seed users " + SEED_USERS + " (" + e.getMessage() + ").");
+		}
+		return seed;
+	}
+
+	/**
+	 * Leaves the group, after writing this Backends state to the snapshot file if
+	 * one is configured.
+	 */
+	private void shutdown() {
+		if (SNAPSHOT != null)
+			this.writeSnapshot();
+		this.scheduler.shutdownNow();
+		this.groupChannel.close();
+		this.events.close();
+		this.archive.close();
+	}
+
+	/**
+	 * Writes this Backends state to the snapshot file, so the next Backend to start
+	 * first can be seeded from it. The file is replaced atomically.
+	 */
+	private void writeSnapshot() {
+		try {
+			Path tmp = Paths.get(SNAPSHOT + ".tmp");
+			Files.write(tmp, Util.objectToByteBuffer(this.state));
+			Files.move(tmp, Paths.get(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Brings this Backend in line with the group when it joins. The first Backend
+	 * keeps its seed state without asking anyone. Any later Backend copies the
+	 * state of a single donor, the oldest other Backend, with an ordered resync
+	 * (see {@link #resyncReq(long, Address, ArrayList)}) sent by itself, so commands
+	 * delivered while the state is in flight apply on top of it rather than being
+	 * lost. Falls back to a vote over every Backends state if the donor doesn't answer.
+	 */
+	private void join() {
+		Address self = this.groupChannel.getAddress();
+		List<Address> backends = GroupUtils.getBackends(this.groupChannel.getView());
+		backends.remove(self);
+		if (backends.isEmpty()) {
+			System.out.println("Not updating state as i'm first to join.");
+			return;
+		}
+
+		boolean installed = false;
+		ArrayList<Address> targets = new ArrayList<>();
+		targets.add(self);
+		this.joinId = ThreadLocalRandom.current().nextLong();
+
+		// This Backend delivers its own request, so it learns its place in the command order
+		try {
+			this.dispatcher.callRemoteMethods(null, "resyncReq", new Object[] { this.joinId, backends.get(0), targets },
+					new Class[] { long.class, Address.class, ArrayList.class }, this.toBackends());
+			installed = this.joined.get(this.RESYNC_TIMEOUT * 2, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			this.metrics.increment("join.timeouts");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		if (!installed) {
+			System.out.println("Donor " + backends.get(0) + " did not send its state, voting instead.");
+			this.update();
+		}
 	}
 
 	/**
@@ -102,54 +279,31 @@ public class Backend {
 	/**
 	 * @see IAuction#register()
 	 */
-	public String registerReq(UserAccount user) {		
-		for (UserAccount u : registeredUsers) {
+	public synchronized String registerReq(UserAccount user) {		
+		for (UserAccount u : state.getUsers().values()) {
 			if (user.getUsername().equals(u.getUsername()) || user.getEmail().equals(u.getEmail())) {
 				return "User with that username or email address already exists.";
 			}
 		}
-		user.setClientId(clientCounter++);
-		registeredUsers.add(user);
+		state = state.withNewUser(user);
 		generateKeyReq(user);
 		return "Account registered.";
 	}
 
 	/**
-	 * Returns a random string of size n constructed of upper and lower case letters
-	 * and numbers.
+	 * Stores a challenge generated by a Frontend. The Frontend generates the challenge
+	 * so every replica stores the same one.
 	 * 
-	 * @param n the length of the string to be returned
-	 * @return the random alphanumeric string
-	 */
-	private String getRandomAlphaNumStringReq(int n) {
-		String AlphaNumericString = "ABCDEFGHIJKLMNOPQRSTUVWXYZ" + "0123456789" + "abcdefghijklmnopqrstuvxyz";
-		StringBuilder sb = new StringBuilder(n);
-		for (int i = 0; i < n; i++) {
-			int index = (int) (AlphaNumericString.length() * Math.random());
-			sb.append(AlphaNumericString.charAt(index));
-		}
-
-		return sb.toString();
-	}
-
-	/**
 	 * @see IAuction#getChallenge()
 	 */
-	public String getChallengeReq(String username) {		
-		// Generate random 10 digit string challenge
-		String challenge = getRandomAlphaNumStringReq(10);
-
+	public synchronized String getChallengeReq(String username, String challenge) {		
 		// Find user requesting challenge
-		UserAccount user = null;
-		for (UserAccount u : registeredUsers) {
-			if (u.getUsername().equals(username))
-				user = u;
-		}
+		UserAccount user = findUser(username);
 		if (user == null)
 			return null;
 
 		// Store the challenge and the client ID for retrieval later
-		challenges.put(user.getClientId(), challenge);
+		state = state.withChallenge(user.getClientId(), challenge);
 
 		// Return challenge to client
 		return challenge;
@@ -160,20 +314,13 @@ public class Backend {
 	 */
 	public UserAccount validateChallengeReq(byte[] encodedChallenge, String username) {		
 		// Find user requesting authentication
-		UserAccount user = null;
-		for (UserAccount u : registeredUsers) {
-			if (u.getUsername().equals(username))
-				user = u;
-		}
+		UserAccount user = findUser(username);
 		if (user == null)
 			return null;
 
-		String challenge = null;
-
 		// Find the plaintext challenge sent to the user
-		if (challenges.containsKey(user.getClientId()))
-			challenge = challenges.get(user.getClientId());
-		else
+		String challenge = state.getChallenges().get(user.getClientId());
+		if (challenge == null)
 			return null;
 
 		// Find key for the user
@@ -205,37 +352,321 @@ public class Backend {
 		return challenge.equals(new String(plainTextChallenge)) ? user : null;
 	}
 
+	/**
+	 * Returns the key Frontends use to sign and verify session tokens.
+	 * @return the Base64 encoded session signing key
+	 */
+	public String getSessionKeyReq() {
+		return this.state.getSessionKey();
+	}
+
+	/**
+	 * Returns the registered user with a client ID.
+	 * @param clientId the client ID of the user
+	 * @return the registered user, or null if there isn't one
+	 */
+	private UserAccount findUser(int clientId) {
+		return state.getUsers().get(clientId);
+	}
+
+	/**
+	 * Returns the registered user with a username.
+	 * @param username the username of the user
+	 * @return the registered user, or null if there isn't one
+	 */
+	private UserAccount findUser(String username) {
+		for (UserAccount u : state.getUsers().values()) {
+			if (u.getUsername().equals(username))
+				return u;
+		}
+		return null;
+	}
+
 	/**
 	 * @see IAuction#createAuction()
+	 * @param clientId the client ID of the authenticated seller, who becomes the owner
 	 */
-	public int createAuctionReq(AuctionItem item) {		
-		if (item.getOwner().getPrivelige().equals("SELLER")) {
-			item.setAuctionID(auctionCounter);
-			listings.put(auctionCounter, item);
-			return this.auctionCounter++;
+	public int createAuctionReq(int clientId, AuctionItem item) {		
+		synchronized (this) {
+			UserAccount owner = findUser(clientId);
+			if (owner == null || !owner.hasRole(Role.SELLER))
+				return -1;
+			item.setOwner(owner);
+			state = state.withNewListing(item);
+			this.emit(StreamEvent.Type.CREATED, item.getAuctionID(), owner.getUsername(), item.getStartingPrice(),
+					item.getStartTime(), item.getItemName());
 		}
-		return -1;
+		if (item.getEndTime() != 0)
+			closingScheduler.schedule(item.getAuctionID(), item.getEndTime());
+		this.notifyListingChanged(item.getAuctionID());
+		return item.getAuctionID();
 	}
 
 	/**
 	 * @see IAuction#closeAuction()
+	 * @param clientId the client ID of the authenticated user closing the auction
+	 * @param time     the time the Frontend received the close, so every replica records the same close time
+	 */
+	public String closeAuctionReq(int auctionId, int clientId, long time) {		
+		String result;
+		synchronized (this) {
+			// Find the Auction Item to close
+			AuctionItem item = state.getListings().get(auctionId);
+			if (item == null)
+				return "Item does not exist.";
+
+			// Only the owner of the auction may close it
+			if (item.getOwner().getClientId() != clientId)
+				return "You are not authorised to close this auction";
+
+			// Closing again changes nothing, the result of the first close is returned
+			if (!item.isLive())
+				return item.closeAuction();
+
+			item = item.copy();
+			result = item.closeAuction();
+			state = state.withListing(item);
+			this.closed(item, time, result);
+		}
+		this.notifyListingChanged(auctionId);
+		return result;
+	}
+
+	/**
+	 * Closes a timed auction that has ended. Sent by the leader Backend to every
+	 * Backend, itself included, so every replica closes the auction at the same
+	 * point in the command order. If a late bid sequenced ahead of the close has
+	 * extended the auction, the close is ignored and the new end time scheduled.
+	 * 
+	 * @param auctionId the auction ID of the auction to be closed
+	 * @param endTime   the end time of the auction when the leader sent the close
+	 * @return          the winner or reserve not met message, or null if the auction wasn't closed
+	 */
+	public String closeEndedReq(int auctionId, long endTime) {
+		String result;
+		synchronized (this) {
+			AuctionItem item = state.getListings().get(auctionId);
+			if (item == null || !item.isLive())
+				return null;
+			if (item.getEndTime() != endTime) {
+				this.closingScheduler.schedule(auctionId, item.getEndTime());
+				return null;
+			}
+			item = item.copy();
+			result = item.closeAuction();
+			state = state.withListing(item);
+			this.closed(item, endTime, result);
+		}
+		this.metrics.increment("closeEnded.closed");
+		this.notifyListingChanged(auctionId);
+
+		// Let the Frontends notify subscribers
+		if (this.isLeader()) {
+			try {
+				List<Address> frontends = GroupUtils.getFrontends(this.groupChannel.getView());
+				if (!frontends.isEmpty())
+					this.dispatcher.callRemoteMethods(frontends, "auctionEnded", new Object[] { auctionId, result },
+							new Class[] { int.class, String.class }, notifyOptions());
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Closes any timed auctions that ended more than the grace period ago. Only the
+	 * oldest Backend acts as leader and sends the close, which every Backend applies
+	 * when it is delivered. The grace period lets bids stamped before the end time
+	 * be sequenced ahead of the close, and any that aren't are rejected by every
+	 * replica alike.
+	 */
+	private void closeEndedAuctions() {
+		try {
+			if (!this.isLeader())
+				return;
+			long now = System.currentTimeMillis();
+			for (int auctionId : this.closingScheduler.pollDue(now - this.CLOSE_GRACE)) {
+				AuctionItem item = state.getListings().get(auctionId);
+				if (item == null || !item.isLive())
+					continue;
+
+				// Reschedule auctions that were extended by late bids
+				if (item.getEndTime() > now - this.CLOSE_GRACE) {
+					this.closingScheduler.schedule(auctionId, item.getEndTime());
+					continue;
+				}
+
+				this.metrics.increment("closeEnded.requests");
+				this.dispatcher.callRemoteMethods(null, "closeEndedReq", new Object[] { auctionId, item.getEndTime() },
+						new Class[] { int.class, long.class }, this.toBackends());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Archives auctions that have been closed longer than the archive period. Only
+	 * the leader acts, multicasting the archive command to every Backend, itself
+	 * included, so every replica archives the auctions at the same point in the
+	 * command order. The command isn't waited on, so the scheduler is never held up.
+	 */
+	private void archiveClosedAuctions() {
+		try {
+			if (!this.isLeader())
+				return;
+			ArrayList<Integer> due = new ArrayList<>();
+			for (int auctionId : this.archiveScheduler.pollDue(System.currentTimeMillis())) {
+				AuctionItem item = state.getListings().get(auctionId);
+				if (item != null && !item.isLive())
+					due.add(auctionId);
+			}
+			if (due.isEmpty())
+				return;
+
+			this.dispatcher.callRemoteMethods(null, "archiveReq", new Object[] { due }, new Class[] { ArrayList.class },
+					this.toBackends());
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Moves closed auctions from the state to the archive as compact records. An
+	 * auction is only removed from the state once its record has been written.
+	 * Sent by the leader Backend to every Backend so every replica archives the same
+	 * auctions, after which the leader tells the Frontends to drop them from their caches.
+	 * @param auctionIds the auction IDs of the auctions to archive
+	 */
+	public void archiveReq(ArrayList<Integer> auctionIds) {
+		long start = System.nanoTime();
+		ArrayList<Integer> archived = new ArrayList<>();
+		// The records are taken and the listings removed under one lock, so a close, bid or
+		// resync can't change a listing between it being archived and removed
+		synchronized (this) {
+			ArrayList<ArchivedAuction> records = new ArrayList<>();
+			for (int auctionId : auctionIds) {
+				AuctionItem item = this.state.getListings().get(auctionId);
+				if (item == null || item.isLive())
+					continue;
+				records.add(new ArchivedAuction(item));
+				archived.add(auctionId);
+			}
+			if (archived.isEmpty())
+				return;
+			try {
+				this.archive.put(records);
+			} catch (IOException e) {
+				// Keep the auctions, the replica is repaired if it now differs from the others
+				this.metrics.increment("archive.errors");
+				e.printStackTrace();
+				return;
+			}
+			this.state = this.state.withoutListings(archived);
+		}
+		this.metrics.add("archive.auctions", archived.size());
+		this.metrics.recordSince("archive.latency", start);
+		this.notifyListingChanged(archived.size() == 1 ? archived.get(0) : -1);
+	}
+
+	/**
+	 * Returns an archived auction. Dispatched as a query, see {@link QueryDispatcher}.
+	 * @param snapshot the state the query was delivered against
+	 * @param args     the auction ID
+	 * @return         the archived auction, or null if it isn't archived on this Backend
 	 */
-	public String closeAuctionReq(int auctionId, UserAccount user) {		
-		AuctionItem item;
+	private ArchivedAuction getArchivedReq(BackendState snapshot, Object[] args) throws IOException {
+		return this.archive.get((Integer) args[0]);
+	}
 
-		// Find the Auction Item to close
-		if (listings.containsKey(auctionId))
-			item = listings.get(auctionId);
-		else
-			return "Item does not exist.";
+	/**
+	 * Returns whether this Backend is the leader, i.e. the oldest Backend in the group.
+	 * @return true if this Backend is the leader
+	 */
+	private boolean isLeader() {
+		List<Address> backends = GroupUtils.getBackends(this.groupChannel.getView());
+		return !backends.isEmpty() && backends.get(0).equals(this.groupChannel.getAddress());
+	}
 
-		// If user is owner of the auction close the auction
-		if (item.getOwner().equals(user)) {
-			return item.closeAuction();
+	/**
+	 * Tells the Frontends that a listing has changed so they can invalidate their
+	 * caches. Only the leader sends the notice as every replica applies the same change.
+	 * @param auctionId the auction ID of the changed listing, or -1 if any listing may have changed
+	 */
+	private void notifyListingChanged(int auctionId) {
+		if (this.dispatcher == null || !this.isLeader())
+			return;
+		try {
+			List<Address> frontends = GroupUtils.getFrontends(this.groupChannel.getView());
+			if (!frontends.isEmpty())
+				this.dispatcher.callRemoteMethods(frontends, "listingChanged", new Object[] { auctionId },
+						new Class[] { int.class }, notifyOptions());
+		} catch (Exception e) {
+			e.printStackTrace();
 		}
+	}
+
+	/**
+	 * Logs an event for a command that was just applied and moves the event counter
+	 * past it. Must be called while holding this Backends lock, so events are logged
+	 * in the order commands are applied.
+	 * @param type      the type of event
+	 * @param auctionId the auction ID of the auction the event occurred on
+	 * @param username  the seller, bidder or winner, or null
+	 * @param amount    the amount in pence
+	 * @param time      the time the command was stamped with
+	 * @param message   the item name or result
+	 */
+	private void emit(StreamEvent.Type type, int auctionId, String username, long amount, long time, String message) {
+		this.events.append(new StreamEvent(this.state.getEventCounter(), type, auctionId, username, amount, time, message));
+		this.state = this.state.withEvent();
+	}
 
-		// Otherwise return error message
-		return "You are not authorised to close this auction";
+	/**
+	 * Logs the close of an auction, with its winner and price if it was won, and
+	 * schedules it to be archived. Must be called while holding this Backends lock.
+	 * @param item   the closed listing
+	 * @param time   the time the auction closed
+	 * @param result the winner or reserve not met message
+	 */
+	private void closed(AuctionItem item, long time, String result) {
+		boolean won = AuctionItem.isWin(result);
+		this.archiveScheduler.schedule(item.getAuctionID(), System.currentTimeMillis() + this.ARCHIVE_AFTER);
+		this.emit(StreamEvent.Type.CLOSED, item.getAuctionID(), won ? item.getLeadingBid().getBidder().getUsername() : null,
+				won ? item.getHighestBid() : 0, time, result);
+	}
+
+	/**
+	 * Returns applied events from a sequence number onwards, for downstream
+	 * consumers. Dispatched as a query, see {@link QueryDispatcher}, so reading
+	 * never holds up the commands being applied.
+	 * @param snapshot the state the query was delivered against
+	 * @param args     the sequence number of the first event to read and the maximum number of events to read
+	 * @return         the events in order, empty if there are none yet
+	 */
+	private ArrayList<StreamEvent> readEventsReq(BackendState snapshot, Object[] args) throws IOException {
+		return this.events.read((Long) args[0], (Integer) args[1]);
+	}
+
+	/**
+	 * Returns the options commands from this Backend to every Backend, itself
+	 * included, are sent with. The commands are multicast in total order, and the
+	 * Frontends, which have none of the methods, are excluded.
+	 * @return the request options
+	 */
+	private RequestOptions toBackends() {
+		return new RequestOptions(ResponseMode.GET_NONE, 0)
+				.setExclusionList(GroupUtils.getFrontends(this.groupChannel.getView()).toArray(new Address[0]));
+	}
+
+	/**
+	 * Returns the options notifications to Frontends are sent with. Notifications
+	 * are sent to each Frontend directly, as a multicast would reach every Backend too.
+	 * @return the request options
+	 */
+	private static RequestOptions notifyOptions() {
+		return new RequestOptions(ResponseMode.GET_NONE, 0).setAnycasting(true);
 	}
 
 	/**
@@ -243,43 +674,209 @@ public class Backend {
 	 * 
 	 * @see IAuction#bidOnItem()
 	 */
-	public synchronized String bidOnItemReq(int auctionId, Bid bid) {		
+	public String bidOnItemReq(int auctionId, Bid bid) {		
+		ArrayList<Bid> bids = new ArrayList<>(1);
+		bids.add(bid);
+		return this.bidOnItemBatchReq(auctionId, bids).get(0).getMessage();
+	}
+
+	/**
+	 * Places a batch of bids coalesced by a Frontend on a single auction. The bids
+	 * are evaluated in arrival order against a single copy of the listing, which is
+	 * published once all bids are placed.
+	 * 
+	 * @param auctionId the auction ID of the auction to be bid on
+	 * @param bids      the bids to be placed in arrival order
+	 * @return          the result of each bid, with the highest bid it left on the listing
+	 */
+	public ArrayList<BidResult> bidOnItemBatchReq(int auctionId, ArrayList<Bid> bids) {
+		long start = System.nanoTime();
+		ArrayList<BidResult> results = new ArrayList<>(bids.size());
+		boolean changed = false;
+		synchronized (this) {
+			this.metrics.recordSince("bidOnItemReq.lockWait", start);
+			AuctionItem item = state.getListings().get(auctionId);
+			if (item != null)
+				item = item.copy();
+			for (Bid bid : bids) {
+				String result = placeBid(item, bid);
+				changed |= AuctionItem.changed(result);
+				// Sealed bids stay hidden until the auction closes
+				boolean shown = AuctionItem.changed(result) && !result.equals(AuctionItem.BID_SEALED);
+				results.add(new BidResult(result, shown ? item.getLeadingBid() : null));
+				if (AuctionItem.changed(result)) {
+					state = state.withBidder(bid.getBidder().getClientId(), auctionId);
+					// Hidden amounts, such as sealed bids, are left out
+					this.emit(StreamEvent.Type.BID, auctionId, bid.getBidder().getUsername(),
+							item.getLeadingBid() == null ? 0 : item.getHighestBid(), bid.getTime(), result);
+				}
+				if (AuctionItem.isWin(result))
+					this.closed(item, bid.getTime(), result);
+			}
+			if (changed)
+				state = state.withListing(item);
+			this.metrics.recordSince("bidOnItemReq.apply", start);
+		}
+		if (changed)
+			this.notifyListingChanged(auctionId);
+		return results;
+	}
+
+	/**
+	 * Places a single bid on a copy of a listing. Must be called while holding this Backends lock.
+	 * 
+	 * @param item the copy of the listing to be bid on, or null if it doesn't exist
+	 * @param bid  the bid to be placed
+	 * @return     a success or error message
+	 */
+	private String placeBid(AuctionItem item, Bid bid) {
+		// Attribute the bid to the registered account of the authenticated bidder
+		UserAccount bidder = findUser(bid.getBidder().getClientId());
+		if (bidder == null)
+			return "You do not have the correct privileges to make a bid.";
+		bid.setBidder(bidder);
+
 		// Ensure privileges
-		if (bid.getBidder().getPrivelige().equals("SELLER"))
+		if (!bid.getBidder().hasRole(Role.BUYER))
 			return "You do not have the correct privileges to make a bid.";
 
-		AuctionItem item;
-		// Find auction item to bid on and place bid
-		if (listings.containsKey(auctionId)) {
-			item = listings.get(auctionId);
-			return item.bid(bid);
-		}
+		if (item == null)
+			return "Item not found.";
 
-		return "Item not found.";
+		// Users holding both roles may not bid on their own auctions
+		if (item.getOwner().getClientId() == bidder.getClientId())
+			return "You cannot bid on your own auction.";
+		return item.bid(bid);
 	}
 
 	/**
+	 * Returns a summary of every listing. Dispatched as a query, see {@link QueryDispatcher}.
+	 * Listings in a snapshot never change, so they can be serialized without locking.
 	 * @see IAuction#browseAuctions()
+	 * @param snapshot the state the query was delivered against
+	 * @param args     no arguments
+	 * @return summaries of the listings in auction ID order
 	 */
-	public ArrayList<AuctionItem> browseAuctionsReq() {		
-		ArrayList<AuctionItem> list = new ArrayList<>();
-		listings.forEach((k, v) -> {
-			list.add(v);
-		});
+	private static ArrayList<ListingSummary> browseAuctionsReq(BackendState snapshot, Object[] args) {
+		return ListingQuery.ALL.execute(snapshot.getListings());
+	}
+
+	/**
+	 * Returns summaries of the listings matching a query. Dispatched as a query, see {@link QueryDispatcher}.
+	 * @see IAuction#searchAuctions()
+	 * @param snapshot the state the query was delivered against
+	 * @param args     the ListingQuery
+	 * @return summaries of the matching listings in order
+	 */
+	private static ArrayList<ListingSummary> searchAuctionsReq(BackendState snapshot, Object[] args) {
+		return ((ListingQuery) args[0]).execute(snapshot.getListings());
+	}
+
+	/**
+	 * Returns summaries of the listings with the given auction IDs, used by a
+	 * Frontend to refresh stale entries in its cache. Dispatched as a query, see
+	 * {@link QueryDispatcher}.
+	 * @param snapshot the state the query was delivered against
+	 * @param args     the ArrayList of auction IDs of the listings
+	 * @return summaries of the listings that exist, in the order requested
+	 */
+	@SuppressWarnings("unchecked")
+	private static ArrayList<ListingSummary> getAuctionsReq(BackendState snapshot, Object[] args) {
+		PersistentIntMap<AuctionItem> listings = snapshot.getListings();
+		ArrayList<ListingSummary> list = new ArrayList<>();
+		for (int auctionId : (ArrayList<Integer>) args[0]) {
+			AuctionItem item = listings.get(auctionId);
+			if (item != null)
+				list.add(new ListingSummary(item));
+		}
+		return list;
+	}
+
+	/**
+	 * Returns a whole listing, with hidden bids left out. Dispatched as a query, see {@link QueryDispatcher}.
+	 * @see IAuction#getAuction()
+	 * @param snapshot the state the query was delivered against
+	 * @param args     the auction ID of the listing
+	 * @return the listing, or null if there is no live or recently closed listing with the auction ID
+	 */
+	private static AuctionItem getAuctionReq(BackendState snapshot, Object[] args) {
+		AuctionItem item = snapshot.getListings().get((Integer) args[0]);
+		return item == null ? null : item.forDisplay();
+	}
+
+	/**
+	 * Returns a page of a sellers listings. Dispatched as a query, see {@link QueryDispatcher}.
+	 * @see IAuction#getMyListings()
+	 * @param snapshot the state the query was delivered against
+	 * @param args     the client ID of the authenticated seller, the page number and the page size
+	 * @return summaries of the listings on the page
+	 */
+	private static ArrayList<ListingSummary> listingsBySellerReq(BackendState snapshot, Object[] args) {
+		return getPage(snapshot, snapshot.getSellerIndex().get((Integer) args[0]), (Integer) args[1], (Integer) args[2]);
+	}
+
+	/**
+	 * Returns a page of the listings a buyer has bid on. Dispatched as a query, see {@link QueryDispatcher}.
+	 * @see IAuction#getMyBids()
+	 * @param snapshot the state the query was delivered against
+	 * @param args     the client ID of the authenticated buyer, the page number and the page size
+	 * @return summaries of the listings on the page
+	 */
+	private static ArrayList<ListingSummary> listingsByBidderReq(BackendState snapshot, Object[] args) {
+		return getPage(snapshot, snapshot.getBidderIndex().get((Integer) args[0]), (Integer) args[1], (Integer) args[2]);
+	}
+
+	/**
+	 * Returns a page of summaries of the listings with the given auction IDs from
+	 * a snapshot, skipping any that have been archived.
+	 * @param snapshot   the state to read
+	 * @param auctionIds the auction IDs of the listings, in the order to page through
+	 * @param page       the page number, starting at 0
+	 * @param pageSize   the number of listings on a page
+	 * @return summaries of the listings on the page, empty if there are none
+	 */
+	private static ArrayList<ListingSummary> getPage(BackendState snapshot, int[] auctionIds, int page, int pageSize) {
+		PersistentIntMap<AuctionItem> listings = snapshot.getListings();
+		ArrayList<ListingSummary> list = new ArrayList<>();
+		long skip = (long) Math.max(0, page) * pageSize;
+		for (int auctionId : auctionIds) {
+			if (list.size() >= pageSize)
+				break;
+			AuctionItem item = listings.get(auctionId);
+			if (item == null)
+				continue;
+			if (skip > 0)
+				skip--;
+			else
+				list.add(new ListingSummary(item));
+		}
 		return list;
 	}
 
+	/**
+	 * Used by a Frontend to measure how far behind this Backend is. As the ping is
+	 * delivered in order its response time includes any queued requests.
+	 * @return true
+	 */
+	public boolean pingReq() {
+		return true;
+	}
+
 	/**
 	 * A function to update the state of this Backend. Obtains all current states
 	 * from other Backends on the channel and updates this Backends state.
 	 */
 	public void update() {
-		HashMap<String, Object> state = null;
+		long start = System.nanoTime();
+		this.metrics.increment("update.invocations");
+		BackendState state = null;
 		try {
-			//Obtain list of all states
-			RequestOptions opts = new RequestOptions(ResponseMode.GET_ALL, (long) 2000);
-			RspList<HashMap<String, Object>> responses = this.dispatcher.callRemoteMethods(null, "getAllState",
-					new Object[] {}, new Class[] {}, opts);
+			// Obtain the states of the other Backends, Frontends have no state to offer
+			List<Address> backends = GroupUtils.getBackends(this.groupChannel.getView());
+			backends.remove(this.groupChannel.getAddress());
+			RequestOptions opts = new RequestOptions(ResponseMode.GET_ALL, (long) 2000).setAnycasting(true);
+			RspList<BackendState> responses = backends.isEmpty() ? new RspList<>()
+					: this.dispatcher.callRemoteMethods(backends, "getAllState", new Object[] {}, new Class[] {}, opts);
 
 			//If first Backend server don't update state
 			if (responses.getResults().isEmpty()) {
@@ -287,113 +884,191 @@ public class Backend {
 				return;
 			}
 
-			state = new HashMap<>();
+			// Record the size of the states transferred to this Backend
+			for (BackendState s : responses.getResults())
+				this.metrics.add("update.stateBytes", Util.objectToByteBuffer(s).length);
+
 			//If responses are conistent use first, otherwise use majority state
-			if (allEqual(responses))
+			if (Voting.allEqual(responses.getResults()))
 				state = responses.getResults().get(0);
-			else
-				state = (HashMap<String, Object>) findMajority(responses.getResults());
+			else {
+				System.out.println("Finding majority state.");
+				state = Voting.findMajority(responses.getResults());
+			}
 
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		if (state == null)
+			return;
 		
+		this.install(state);
+		this.metrics.recordSince("update.latency", start);
+	}
+
+	/**
+	 * Replaces this Backends state.
+	 * @param state the new state
+	 */
+	private void install(BackendState state) {
 		//Assign new state
-		this.registeredUsers = (ArrayList<UserAccount>) state.get("registeredUsers");
-		this.challenges = (Hashtable<Integer, String>) state.get("challenges");
-		this.listings = (Hashtable<Integer, AuctionItem>) state.get("listings");
-		this.auctionCounter = (int) state.get("auctionCounter");
-		this.clientCounter = (int) state.get("clientCounter");
+		synchronized (this) {
+			this.state = state;
+			this.events.rewind(state.getEventCounter());
+		}
 
+		this.reschedule(state);
+		this.notifyListingChanged(-1);
 		System.out.println("State Updated.");
 	}
 
 	/**
-	 * Returns this Backends current state.
-	 * @return this Backends state
+	 * Schedules the timed auctions in a state to close, and its closed auctions to
+	 * be archived a full archive period from now.
+	 * @param state the state
 	 */
-	public HashMap<String, Object> getAllState() {
-		HashMap<String, Object> state = new HashMap<>();
-		state.put("registeredUsers", this.registeredUsers);
-		state.put("challenges", this.challenges);
-		state.put("listings", this.listings);
-		state.put("auctionCounter", this.auctionCounter);
-		state.put("clientCounter", this.clientCounter);
-		return state;
-	}
-	
-	/**
-	 * A helper function to return whether elements in a list are identical.
-	 * @param list the list of values to compare
-	 * @return all values are identical
-	 */
-	private boolean allEqual(RspList list) {
-		List results = list.getResults();
-		//If list has less than 2 elements return true
-		if (results.size() <= 1)
-			return true;
-
-		//Otherwise compare all combinations of elements
-		for (int i = 0; i < results.size(); i++) {
-			for (int j = 0; j < results.size(); j++) {
-				if (!results.get(i).equals(results.get(j)))
-					return false;
+	private void reschedule(BackendState state) {
+		long archiveTime = System.currentTimeMillis() + this.ARCHIVE_AFTER;
+		this.closingScheduler.clear();
+		this.archiveScheduler.clear();
+		state.getListings().forEach((k, v) -> {
+			if (v.isLive() && v.getEndTime() != 0)
+				this.closingScheduler.schedule(k, v.getEndTime());
+			else if (!v.isLive())
+				this.archiveScheduler.schedule(k, archiveTime);
+		});
+	}
 
-			}
-		}
-		return true;
+	/**
+	 * Returns the hash of this Backends state, so a Frontend can find replicas that
+	 * have diverged without transferring their state. Dispatched as a query, see
+	 * {@link QueryDispatcher}.
+	 * @param snapshot the state the query was delivered against
+	 * @param args     no arguments
+	 * @return the hash of the state
+	 */
+	private static int stateHashReq(BackendState snapshot, Object[] args) {
+		return snapshot.hashCode();
 	}
 
 	/**
-	 * A helper function to find the majority element in a list. 
-	 * @param list the list of elements
-	 * @return the majority element
+	 * Brings diverged Backends back in line with a donor Backend. The call is
+	 * multicast in total order, so the donor captures its state at exactly the
+	 * point in the command stream where each target stops applying commands. A
+	 * target holds up its ordered delivery until it has installed the donors state,
+	 * after which the commands queued behind this call apply on top of it, so no
+	 * write is lost or applied twice.
+	 * @param resyncId the ID of this resync, unique to the caller
+	 * @param donor    the Backend whose state is copied
+	 * @param targets  the Backends whose state is replaced
 	 */
-	private <T> Object findMajority(List<T> list) {
-		System.out.println("Finding majority state.");
-		
-		//Obtain distinct elements
-		Stream<T> dList = list.stream().distinct();
-		Object[] dListObj = dList.toArray();
-
-		//Create corresponding counts array
-		int[] counts = new int[dListObj.length];
-		for (int i = 0; i < counts.length; i++) {
-			counts[i] = 0;
+	public void resyncReq(long resyncId, Address donor, ArrayList<Address> targets) {
+		Address self = this.groupChannel.getAddress();
+		if (self.equals(donor)) {
+			BackendState snapshot = this.state;
+			this.queryPool.execute(() -> this.donate(resyncId, snapshot, targets));
+			return;
 		}
+		if (!targets.contains(self))
+			return;
 
-		//Count number of times distinct element appears in list
-		for (int i = 0; i < dListObj.length; i++) {
-			for (int j = 0; j < list.size(); j++) {
-				if (dListObj[i].equals(list.get(j))) 
-					counts[i]++;				
-			}
+		long start = System.nanoTime();
+		boolean installed = false;
+		this.metrics.increment("resync.invocations");
+		CompletableFuture<byte[]> transfer = this.transfers.computeIfAbsent(resyncId, k -> new CompletableFuture<>());
+		try {
+			byte[] state = transfer.get(this.RESYNC_TIMEOUT, TimeUnit.MILLISECONDS);
+			this.metrics.add("resync.stateBytes", state.length);
+			this.install((BackendState) Util.objectFromByteBuffer(state));
+			this.metrics.recordSince("resync.latency", start);
+			installed = true;
+		} catch (TimeoutException e) {
+			this.metrics.increment("resync.timeouts");
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			this.transfers.remove(resyncId);
 		}
 
-		//Return the most common distinct element
-		int modeIndex = 0;
-		for (int i = 0; i < counts.length; i++) {
-			if (counts[i] > counts[modeIndex])
-				modeIndex = i;
+		// Let a joining Backend finish starting up
+		if (resyncId == this.joinId)
+			this.joined.complete(installed);
+	}
+
+	/**
+	 * Receives a donors state for a resync.
+	 * @param resyncId the ID of the resync
+	 * @param state    the serialized state of the donor
+	 */
+	public void installStateReq(long resyncId, byte[] state) {
+		this.transfers.computeIfAbsent(resyncId, k -> new CompletableFuture<>()).complete(state);
+	}
+
+	/**
+	 * Sends a state captured for a resync to its targets. The state is serialized
+	 * once and the same bytes are sent to every target.
+	 * @param resyncId the ID of the resync
+	 * @param snapshot the state to send
+	 * @param targets  the Backends to send it to
+	 */
+	private void donate(long resyncId, BackendState snapshot, List<Address> targets) {
+		try {
+			byte[] state = Util.objectToByteBuffer(snapshot);
+			this.metrics.increment("resync.donations");
+			this.dispatcher.callRemoteMethods(targets, "installStateReq", new Object[] { resyncId, state },
+					new Class[] { long.class, byte[].class },
+					new RequestOptions(ResponseMode.GET_NONE, 0).setAnycasting(true));
+		} catch (Exception e) {
+			e.printStackTrace();
 		}
-		return dListObj[modeIndex];
+	}
+
+	/**
+	 * Returns this Backends state. The snapshot is immutable so it can be
+	 * serialized while requests continue to be applied. Dispatched as a query, see
+	 * {@link QueryDispatcher}.
+	 * @param snapshot the state the query was delivered against
+	 * @param args     no arguments
+	 * @return the state
+	 */
+	private BackendState getAllState(BackendState snapshot, Object[] args) {
+		this.metrics.increment("getAllState.invocations");
+		return snapshot;
+	}
+
+	/**
+	 * Returns this Backends current state, so the harnesses can compare replicas in process.
+	 * @return this Backends state
+	 */
+	BackendState getState() {
+		return this.state;
 	}
 
 	/**
 	 * A function to update the challenge data for this Backend.
 	 * @param challengeState the state to be assigned
 	 */
-	public void updateChallengeState(Hashtable<Integer, String> challengeState) {
+	public synchronized void updateChallengeState(PersistentIntMap<String> challengeState) {
 		System.out.println("Updating Challenge State");
-		this.challenges = challengeState;
+		this.state = this.state.withChallenges(challengeState);
+	}
+
+	/**
+	 * Returns the challenge state. Dispatched as a query, see {@link QueryDispatcher}.
+	 * @param snapshot the state the query was delivered against
+	 * @param args     no arguments
+	 * @return the challenge state
+	 */
+	private static PersistentIntMap<String> getChallengeState(BackendState snapshot, Object[] args) {
+		return snapshot.getChallenges();
 	}
 
 	/**
-	 * Returns this Backends challenge state
-	 * @return this Backends challenge state
+	 * Returns the channel this Backend is connected to, so faults can be injected into its stack.
+	 * @return this Backends channel
 	 */
-	public Hashtable<Integer, String> getChallengeState() {
-		return this.challenges;
+	JChannel getChannel() {
+		return this.groupChannel;
 	}
 
 	/**
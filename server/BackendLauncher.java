@@ -0,0 +1,109 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts and stops Backend processes on this machine. Each Backend runs in its
+ * own JVM with the same classpath and JGroups settings as this one, and logs to
+ * backend-launched-N.log in the working directory. The files a Backend writes,
+ * its snapshot, event log and archive, are given the suffix -N so launched
+ * Backends never share them. Only Backends started by this launcher are ever
+ * stopped, newest first.
+ * @author Thomas Watkins
+ */
+public class BackendLauncher {
+
+	// System properties passed on to launched Backends, settings such as ports that must differ are not
+	private static final String[] FORWARDED = { "java.net.preferIPv4Stack", "jgroups.", "group.", "query.", "backend." };
+	// Forwarded properties naming files a Backend writes, each launched Backend is given its own
+	private static final String[] PER_BACKEND = { "backend.snapshot", "backend.eventLog", "backend.archive" };
+
+	private final List<String> command;
+	private final Map<String, String> files;
+	private final Deque<Process> launched;
+	private int count;
+
+	/**
+	 * Constructor. Creates a BackendLauncher.
+	 */
+	public BackendLauncher() {
+		this.command = new ArrayList<>();
+		this.command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		this.command.add("-cp");
+		this.command.add(System.getProperty("java.class.path"));
+		this.files = new LinkedHashMap<>();
+		for (String name : System.getProperties().stringPropertyNames()) {
+			if (Arrays.asList(PER_BACKEND).contains(name)) {
+				this.files.put(name, System.getProperty(name));
+				continue;
+			}
+			for (String prefix : FORWARDED) {
+				if (name.startsWith(prefix))
+					this.command.add("-D" + name + "=" + System.getProperty(name));
+			}
+		}
+		this.launched = new ArrayDeque<>();
+	}
+
+	/**
+	 * Starts a Backend. It joins the group and copies its state on its own.
+	 * @throws IOException if the process could not be started
+	 */
+	public synchronized void start() throws IOException {
+		int n = ++this.count;
+		List<String> command = new ArrayList<>(this.command);
+		for (Map.Entry<String, String> file : this.files.entrySet())
+			command.add("-D" + file.getKey() + "=" + withSuffix(file.getValue(), n));
+		command.add("Backend");
+
+		File log = new File("backend-launched-" + n + ".log");
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+		this.launched.push(process);
+		System.out.printf("started backend, logging to %s\n", log);
+	}
+
+	/**
+	 * Adds the suffix -N to a file name, before its extension if it has one,
+	 * e.g. events.log becomes events-2.log.
+	 * @param path the path of the file
+	 * @param n    the number of the launched Backend
+	 * @return the path with the suffix added
+	 */
+	private static String withSuffix(String path, int n) {
+		int dot = path.lastIndexOf('.');
+		if (dot <= path.lastIndexOf(File.separatorChar) + 1)
+			return path + "-" + n;
+		return path.substring(0, dot) + "-" + n + path.substring(dot);
+	}
+
+	/**
+	 * Stops the newest running Backend this launcher started. The Backend leaves the
+	 * group on shutdown, so the other members see it leave rather than crash.
+	 * @return true if a Backend was stopped, false if none are running
+	 */
+	public synchronized boolean stop() {
+		this.launched.removeIf(p -> !p.isAlive());
+		Process process = this.launched.poll();
+		if (process == null)
+			return false;
+		process.destroy();
+		System.out.println("stopped backend");
+		return true;
+	}
+
+	/**
+	 * Returns the number of Backends started by this launcher that are still running.
+	 * @return the number of running Backends
+	 */
+	public synchronized int getRunning() {
+		this.launched.removeIf(p -> !p.isAlive());
+		return this.launched.size();
+	}
+}
@@ -0,0 +1,277 @@
+import java.io.Serializable;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable snapshot of a Backends state. A Backend publishes its current state
+ * through a single volatile reference; reads and state transfers use whichever
+ * snapshot is current without locking, while writers build a new snapshot that
+ * shares everything but the changed path and publish it.
+ *
+ * Listings held by a snapshot must not be modified, a writer copies a listing
+ * with {@link AuctionItem#copy()} before changing it.
+ * @author Thomas Watkins
+ */
+public final class BackendState implements Serializable {
+
+	// Kept from the version without an event counter or indexes so existing snapshots can still be read
+	private static final long serialVersionUID = -8726993503430965335L;
+
+	private final PersistentIntMap<UserAccount> users;
+	private final PersistentIntMap<String> challenges;
+	private final PersistentIntMap<AuctionItem> listings;
+	private final int auctionCounter;
+	private final int clientCounter;
+	private final String sessionKey;
+	private final long eventCounter;
+	private final AuctionIndex sellerIndex;
+	private final AuctionIndex bidderIndex;
+	private transient int hash;
+
+	/**
+	 * Constructor. Creates a BackendState with no users or listings.
+	 * @param sessionKey the Base64 encoded session signing key
+	 */
+	public BackendState(String sessionKey) {
+		this(PersistentIntMap.empty(), PersistentIntMap.empty(), PersistentIntMap.empty(), 1, 1, sessionKey, 1,
+				AuctionIndex.empty(), AuctionIndex.empty());
+	}
+
+	private BackendState(PersistentIntMap<UserAccount> users, PersistentIntMap<String> challenges,
+			PersistentIntMap<AuctionItem> listings, int auctionCounter, int clientCounter, String sessionKey,
+			long eventCounter, AuctionIndex sellerIndex, AuctionIndex bidderIndex) {
+		this.users = users;
+		this.challenges = challenges;
+		this.listings = listings;
+		this.auctionCounter = auctionCounter;
+		this.clientCounter = clientCounter;
+		this.sessionKey = sessionKey;
+		this.eventCounter = eventCounter;
+		this.sellerIndex = sellerIndex;
+		this.bidderIndex = bidderIndex;
+	}
+
+	/**
+	 * Returns the registered users by client ID.
+	 * @return the registered users
+	 */
+	public PersistentIntMap<UserAccount> getUsers() {
+		return this.users;
+	}
+
+	/**
+	 * Returns the outstanding challenges by client ID.
+	 * @return the challenges
+	 */
+	public PersistentIntMap<String> getChallenges() {
+		return this.challenges;
+	}
+
+	/**
+	 * Returns the listings by auction ID.
+	 * @return the listings
+	 */
+	public PersistentIntMap<AuctionItem> getListings() {
+		return this.listings;
+	}
+
+	/**
+	 * Returns the auctions of each seller.
+	 * @return the index of auction IDs by the client ID of their owner
+	 */
+	public AuctionIndex getSellerIndex() {
+		return this.sellerIndex;
+	}
+
+	/**
+	 * Returns the auctions each buyer has bid on.
+	 * @return the index of auction IDs by the client ID of the bidder
+	 */
+	public AuctionIndex getBidderIndex() {
+		return this.bidderIndex;
+	}
+
+	/**
+	 * Returns the auction ID the next listing will be given.
+	 * @return the next auction ID
+	 */
+	public int getAuctionCounter() {
+		return this.auctionCounter;
+	}
+
+	/**
+	 * Returns the client ID the next user will be given.
+	 * @return the next client ID
+	 */
+	public int getClientCounter() {
+		return this.clientCounter;
+	}
+
+	/**
+	 * Returns the sequence number the next event will be given.
+	 * @return the next event sequence number
+	 */
+	public long getEventCounter() {
+		return this.eventCounter;
+	}
+
+	/**
+	 * Returns the key Frontends use to sign session tokens.
+	 * @return the Base64 encoded session signing key
+	 */
+	public String getSessionKey() {
+		return this.sessionKey;
+	}
+
+	/**
+	 * Returns a state with a newly registered user, who is given the next client ID.
+	 * @param user the user to register
+	 * @return the new state
+	 */
+	public BackendState withNewUser(UserAccount user) {
+		user.setClientId(this.clientCounter);
+		return new BackendState(this.users.plus(this.clientCounter, user), this.challenges, this.listings,
+				this.auctionCounter, this.clientCounter + 1, this.sessionKey, this.eventCounter, this.sellerIndex, this.bidderIndex);
+	}
+
+	/**
+	 * Returns a state with a new listing, which is given the next auction ID and
+	 * indexed under its owner.
+	 * @param item the item to list
+	 * @return the new state
+	 */
+	public BackendState withNewListing(AuctionItem item) {
+		item.setAuctionID(this.auctionCounter);
+		return new BackendState(this.users, this.challenges, this.listings.plus(this.auctionCounter, item),
+				this.auctionCounter + 1, this.clientCounter, this.sessionKey, this.eventCounter,
+				this.sellerIndex.plus(item.getOwner().getClientId(), this.auctionCounter), this.bidderIndex);
+	}
+
+	/**
+	 * Returns a state with a listing replaced.
+	 * @param item the changed copy of the listing
+	 * @return the new state
+	 */
+	public BackendState withListing(AuctionItem item) {
+		return new BackendState(this.users, this.challenges, this.listings.plus(item.getAuctionID(), item),
+				this.auctionCounter, this.clientCounter, this.sessionKey, this.eventCounter, this.sellerIndex, this.bidderIndex);
+	}
+
+	/**
+	 * Returns a state with listings removed, along with their index entries.
+	 * @param auctionIds the auction IDs of the listings to remove
+	 * @return the new state
+	 */
+	public BackendState withoutListings(List<Integer> auctionIds) {
+		PersistentIntMap<AuctionItem> listings = this.listings;
+		AuctionIndex sellers = this.sellerIndex;
+		AuctionIndex bidders = this.bidderIndex;
+		for (int auctionId : auctionIds) {
+			AuctionItem item = listings.get(auctionId);
+			if (item == null)
+				continue;
+			listings = listings.minus(auctionId);
+			sellers = sellers.minus(item.getOwner().getClientId(), auctionId);
+			for (int bidder : item.getBidderIds())
+				bidders = bidders.minus(bidder, auctionId);
+		}
+		return new BackendState(this.users, this.challenges, listings, this.auctionCounter, this.clientCounter,
+				this.sessionKey, this.eventCounter, sellers, bidders);
+	}
+
+	/**
+	 * Returns a state with an auction indexed under a bidder.
+	 * @param clientId  the client ID of the bidder
+	 * @param auctionId the auction ID of the auction bid on
+	 * @return the new state, or this state if the auction is already indexed under the bidder
+	 */
+	public BackendState withBidder(int clientId, int auctionId) {
+		AuctionIndex bidders = this.bidderIndex.plus(clientId, auctionId);
+		if (bidders == this.bidderIndex)
+			return this;
+		return new BackendState(this.users, this.challenges, this.listings, this.auctionCounter, this.clientCounter,
+				this.sessionKey, this.eventCounter, this.sellerIndex, bidders);
+	}
+
+	/**
+	 * Returns a state with a users challenge set.
+	 * @param clientId  the client ID of the user
+	 * @param challenge the challenge sent to the user
+	 * @return the new state
+	 */
+	public BackendState withChallenge(int clientId, String challenge) {
+		return new BackendState(this.users, this.challenges.plus(clientId, challenge), this.listings,
+				this.auctionCounter, this.clientCounter, this.sessionKey, this.eventCounter, this.sellerIndex, this.bidderIndex);
+	}
+
+	/**
+	 * Returns a state with all challenges replaced.
+	 * @param challenges the challenges by client ID
+	 * @return the new state
+	 */
+	public BackendState withChallenges(PersistentIntMap<String> challenges) {
+		return new BackendState(this.users, challenges, this.listings, this.auctionCounter, this.clientCounter,
+				this.sessionKey, this.eventCounter, this.sellerIndex, this.bidderIndex);
+	}
+
+	/**
+	 * Returns a state with the event counter moved past an event.
+	 * @return the new state
+	 */
+	public BackendState withEvent() {
+		return new BackendState(this.users, this.challenges, this.listings, this.auctionCounter, this.clientCounter,
+				this.sessionKey, this.eventCounter + 1, this.sellerIndex, this.bidderIndex);
+	}
+
+	/**
+	 * Overriding the equals method. If all fields are equal return true, false otherwise.
+	 * @param obj the BackendState to be compared
+	 * @return true if this BackendState and the comparison object are equal
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		BackendState other = (BackendState) obj;
+		return this.auctionCounter == other.auctionCounter && this.clientCounter == other.clientCounter
+				&& this.eventCounter == other.eventCounter && this.sellerIndex.equals(other.sellerIndex)
+				&& this.bidderIndex.equals(other.bidderIndex)
+				&& Objects.equals(this.sessionKey, other.sessionKey) && this.users.equals(other.users)
+				&& this.challenges.equals(other.challenges) && this.listings.equals(other.listings);
+	}
+
+	/**
+	 * Overriding the hashCode method to be consistent with equals. As the state is
+	 * immutable the hash is computed once.
+	 * @return the hash code of this BackendState
+	 */
+	public int hashCode() {
+		int h = this.hash;
+		if (h == 0) {
+			h = Objects.hash(this.users, this.challenges, this.listings, this.auctionCounter, this.clientCounter,
+					this.sessionKey, this.eventCounter, this.sellerIndex, this.bidderIndex);
+			this.hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * Builds the indexes of a state written before there were any, from the
+	 * owners and held bids of its listings.
+	 * @return this state, or a copy of it with indexes
+	 */
+	private Object readResolve() {
+		if (this.sellerIndex != null)
+			return this;
+		AuctionIndex sellers = AuctionIndex.empty();
+		AuctionIndex bidders = AuctionIndex.empty();
+		for (AuctionItem item : this.listings.values()) {
+			sellers = sellers.plus(item.getOwner().getClientId(), item.getAuctionID());
+			for (int bidder : item.getBidderIds())
+				bidders = bidders.plus(bidder, item.getAuctionID());
+		}
+		return new BackendState(this.users, this.challenges, this.listings, this.auctionCounter, this.clientCounter,
+				this.sessionKey, this.eventCounter, sellers, bidders);
+	}
+}
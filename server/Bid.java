@@ -1,19 +1,28 @@
 import java.io.Serializable;
 
 /**
- * An implementation for a Bid to be used by a client buyer.
+ * An implementation for a Bid to be used by a client buyer. A bid can instead
+ * carry a hidden maximum, in which case the auction bids on the bidders behalf
+ * up to that amount, see {@link AuctionItem#bid(Bid)}.
  * @author Thomas Watkins
  */
 public class Bid implements Serializable {
+
+	// Kept from the version without maximum bids so existing state can still be read
+	private static final long serialVersionUID = 1543650615578076258L;
+
 	private UserAccount bidder;
-	private double amount;
+	private long amount;
+	private long maxAmount;
+	private long time;
+	private transient int hash;
 	
 	/**
 	 * Constructor. Creates a Bid.
 	 * @param bidder the client placing the bid
-	 * @param amount the amount of money placed
+	 * @param amount the amount of money placed in pence
 	 */
-	public Bid(UserAccount bidder, double amount) {
+	public Bid(UserAccount bidder, long amount) {
 		this.bidder = bidder;
 		this.amount = amount;
 	}
@@ -26,13 +35,65 @@ public class Bid implements Serializable {
 		return this.bidder;
 	}
 
+	/**
+	 * Sets this bids user account to the registered account of the authenticated bidder.
+	 * @param bidder the registered user account
+	 */
+	public void setBidder(UserAccount bidder) {
+		this.bidder = bidder;
+		this.hash = 0;
+	}
+
 	/**
 	 * Returns the amount of money placed on this bid.
-	 * @return the amount of money placed on this bid
+	 * @return the amount of money placed on this bid in pence
 	 */
-	public double getAmount() {
+	public long getAmount() {
 		return amount;
 	}
+
+	/**
+	 * Returns the hidden maximum of this bid.
+	 * @return the maximum in pence, 0 if this is not a maximum bid
+	 */
+	public long getMaxAmount() {
+		return maxAmount;
+	}
+
+	/**
+	 * Makes this bid a maximum bid, to be bid on the bidders behalf up to an amount.
+	 * @param maxAmount the maximum in pence
+	 */
+	public void setMaxAmount(long maxAmount) {
+		this.maxAmount = maxAmount;
+		this.hash = 0;
+	}
+
+	/**
+	 * Returns whether this bid is a maximum bid.
+	 * @return true if this bid carries a hidden maximum
+	 */
+	public boolean isMaxBid() {
+		return maxAmount > 0;
+	}
+
+	/**
+	 * Returns the time this bid was received by a Frontend.
+	 * @return the time in milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Stamps this bid with the time it was received by a Frontend. All replicas
+	 * use this time so they agree on whether a bid was placed before an auction ended.
+	 * @param time the time in milliseconds since the epoch
+	 */
+	public void setTime(long time) {
+		this.time = time;
+		this.hash = 0;
+	}
 	
 	/**
 	 * Overriding the equals method. If all fields are equal return true, false otherwise.
@@ -47,7 +108,11 @@ public class Bid implements Serializable {
 		if (getClass() != obj.getClass())
 			return false;
 		Bid other = (Bid) obj;
-		if (Double.doubleToLongBits(amount) != Double.doubleToLongBits(other.amount))
+		if (amount != other.amount)
+			return false;
+		if (maxAmount != other.maxAmount)
+			return false;
+		if (time != other.time)
 			return false;
 		if (bidder == null) {
 			if (other.bidder != null)
@@ -56,6 +121,23 @@ public class Bid implements Serializable {
 			return false;
 		return true;
 	}
-	
-	
+
+	/**
+	 * Overriding the hashCode method to be consistent with equals. The hash is
+	 * cached until the bid is changed.
+	 * @return the hash code of this Bid
+	 */
+	public int hashCode() {
+		int h = this.hash;
+		if (h == 0) {
+			final int prime = 31;
+			h = 1;
+			h = prime * h + Long.hashCode(amount);
+			h = prime * h + Long.hashCode(maxAmount);
+			h = prime * h + Long.hashCode(time);
+			h = prime * h + ((bidder == null) ? 0 : bidder.hashCode());
+			this.hash = h;
+		}
+		return h;
+	}
 }
@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Coalesces concurrent bids on the same auction into a single replicated batch.
+ * While a batch for an auction is in flight, further bids on that auction are
+ * collected into the next batch, which is sent as soon as the first completes.
+ * An isolated bid is therefore sent immediately, while a hot auction costs one
+ * replicated round per batch rather than one per bid.
+ * @author Thomas Watkins
+ */
+public class BidCoalescer {
+
+	/**
+	 * Sends a batch of bids to the Backends.
+	 */
+	public interface BatchSender {
+		/**
+		 * Places a batch of bids on an auction, in order.
+		 * @param auctionId the auction ID of the auction to be bid on
+		 * @param bids      the bids to be placed in arrival order
+		 * @return          a result for each bid, or null if the batch failed
+		 */
+		public ArrayList<BidResult> send(int auctionId, ArrayList<Bid> bids);
+	}
+
+	/**
+	 * A batch of bids on a single auction and their results.
+	 */
+	private static class Batch {
+		private final ArrayList<Bid> bids = new ArrayList<>();
+		private ArrayList<BidResult> results;
+		private boolean done;
+	}
+
+	private final BatchSender sender;
+	private final long windowMillis;
+	private final Metrics metrics;
+	private final HashMap<Integer, Batch> pending;
+	private final HashSet<Integer> inFlight;
+
+	/**
+	 * Constructor. Creates a BidCoalescer. An additional collection window can be set
+	 * with the "bid.coalesceWindowMs" system property.
+	 * @param sender  the function used to send a batch to the Backends
+	 * @param metrics the metrics to record batch sizes to
+	 */
+	public BidCoalescer(BatchSender sender, Metrics metrics) {
+		this.sender = sender;
+		this.windowMillis = Long.getLong("bid.coalesceWindowMs", 0);
+		this.metrics = metrics;
+		this.pending = new HashMap<>();
+		this.inFlight = new HashSet<>();
+	}
+
+	/**
+	 * Places a bid, blocking until the batch it was coalesced into has completed.
+	 * @param auctionId the auction ID of the auction to be bid on
+	 * @param bid       the bid to be placed
+	 * @return          the result of this bid
+	 */
+	public BidResult submit(int auctionId, Bid bid) {
+		Batch batch;
+		boolean interrupted = false;
+		synchronized (this) {
+			batch = this.pending.computeIfAbsent(auctionId, k -> new Batch());
+			int index = batch.bids.size();
+			batch.bids.add(bid);
+
+			// Bids that joined an existing batch wait for its result
+			if (index > 0) {
+				while (!batch.done)
+					interrupted |= this.await();
+				if (interrupted)
+					Thread.currentThread().interrupt();
+				return resultAt(batch, index);
+			}
+
+			// The first bid of a batch sends it once no other batch for this auction is in flight
+			while (this.inFlight.contains(auctionId))
+				interrupted |= this.await();
+			this.inFlight.add(auctionId);
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		// Optionally hold the batch open to collect more bids
+		if (this.windowMillis > 0) {
+			try {
+				Thread.sleep(this.windowMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// Close the batch so new bids start the next one
+		synchronized (this) {
+			this.pending.remove(auctionId, batch);
+		}
+
+		ArrayList<BidResult> results = null;
+		try {
+			this.metrics.increment("bidOnItem.batches");
+			this.metrics.add("bidOnItem.coalesced", batch.bids.size() - 1);
+			results = this.sender.send(auctionId, batch.bids);
+		} finally {
+			synchronized (this) {
+				batch.results = results;
+				batch.done = true;
+				this.inFlight.remove(auctionId);
+				this.notifyAll();
+			}
+		}
+		return resultAt(batch, 0);
+	}
+
+	/**
+	 * Waits for a batch to change state. Interrupts are deferred as every bid in a batch
+	 * depends on its first bid sending it. Must be called while holding this objects lock.
+	 * @return true if the thread was interrupted while waiting
+	 */
+	private boolean await() {
+		try {
+			this.wait();
+			return false;
+		} catch (InterruptedException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the result for a bid within a completed batch.
+	 * @param batch the completed batch
+	 * @param index the position of the bid in the batch
+	 * @return      the result of the bid
+	 */
+	private static BidResult resultAt(Batch batch, int index) {
+		if (batch.results == null || batch.results.size() != batch.bids.size())
+			return new BidResult("Error", null);
+		return batch.results.get(index);
+	}
+}
@@ -0,0 +1,65 @@
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * The result of a bid placed by a Backend: the message shown to the bidder and
+ * the highest bid the bid left on the listing, so a Frontend can notify
+ * subscribers of the amount this bid produced without reading the listing again.
+ * @author Thomas Watkins
+ */
+public class BidResult implements Serializable {
+
+	private static final long serialVersionUID = -6622499265909060808L;
+
+	private final String message;
+	private final Bid highestBid;
+
+	/**
+	 * Constructor. Creates a BidResult.
+	 * @param message    the success or error message for the bid
+	 * @param highestBid the highest bid on the listing after the bid, or null if it isn't shown
+	 */
+	public BidResult(String message, Bid highestBid) {
+		this.message = message;
+		this.highestBid = highestBid;
+	}
+
+	/**
+	 * Returns the success or error message for the bid.
+	 * @return the message
+	 */
+	public String getMessage() {
+		return this.message;
+	}
+
+	/**
+	 * Returns the highest bid on the listing after the bid, as bid on the bidders
+	 * behalf where a maximum bid or the reserve set the amount.
+	 * @return the highest bid, or null if the bid didn't change the listing or is sealed
+	 */
+	public Bid getHighestBid() {
+		return this.highestBid;
+	}
+
+	/**
+	 * Overriding the equals method. If all fields are equal return true, false otherwise.
+	 * @param obj the BidResult to be compared
+	 * @return true if this BidResult and the comparison object are equal
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		BidResult other = (BidResult) obj;
+		return Objects.equals(this.message, other.message) && Objects.equals(this.highestBid, other.highestBid);
+	}
+
+	/**
+	 * Overriding the hashCode method to be consistent with equals.
+	 * @return the hash code of this BidResult
+	 */
+	public int hashCode() {
+		return Objects.hash(this.message, this.highestBid);
+	}
+}
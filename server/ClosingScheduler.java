@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the end times of timed auctions in a priority queue keyed on deadline.
+ * Checking for due auctions only looks at the head of the queue, so each tick
+ * costs O(1) regardless of how many auctions are pending.
+ * @author Thomas Watkins
+ */
+public class ClosingScheduler {
+
+	/**
+	 * An auction and the time it is due to close.
+	 */
+	private static class Deadline implements Comparable<Deadline> {
+		private final int auctionId;
+		private final long endTime;
+
+		private Deadline(int auctionId, long endTime) {
+			this.auctionId = auctionId;
+			this.endTime = endTime;
+		}
+
+		public int compareTo(Deadline other) {
+			return Long.compare(this.endTime, other.endTime);
+		}
+	}
+
+	private final PriorityQueue<Deadline> deadlines;
+
+	/**
+	 * Constructor. Creates an empty ClosingScheduler.
+	 */
+	public ClosingScheduler() {
+		this.deadlines = new PriorityQueue<>();
+	}
+
+	/**
+	 * Schedules an auction to close.
+	 * @param auctionId the auction ID of the auction
+	 * @param endTime   the time the auction ends in milliseconds since the epoch
+	 */
+	public synchronized void schedule(int auctionId, long endTime) {
+		this.deadlines.add(new Deadline(auctionId, endTime));
+	}
+
+	/**
+	 * Removes and returns the auction IDs whose scheduled end time is at or before the given time.
+	 * @param time the time in milliseconds since the epoch
+	 * @return the IDs of the auctions that are due
+	 */
+	public synchronized List<Integer> pollDue(long time) {
+		List<Integer> due = new ArrayList<>();
+		while (!this.deadlines.isEmpty() && this.deadlines.peek().endTime <= time)
+			due.add(this.deadlines.poll().auctionId);
+		return due;
+	}
+
+	/**
+	 * Returns the number of auctions scheduled to close.
+	 * @return the number of scheduled auctions
+	 */
+	public synchronized int size() {
+		return this.deadlines.size();
+	}
+
+	/**
+	 * Removes all scheduled auctions.
+	 */
+	public synchronized void clear() {
+		this.deadlines.clear();
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * A Dutch auction: the price starts at the starting price (or the reserve, if
+ * higher) and drops by a fixed amount every interval until it reaches the
+ * reserve. The first bid at or above the current price wins the item at that
+ * price and closes the auction, so there is never a contest for the highest bid.
+ *
+ * The price is worked out from the time the Frontend stamped the listing with
+ * when it was created and the time it stamped the bid with, so every replica
+ * agrees on it.
+ * @author Thomas Watkins
+ */
+public class DutchAuction implements AuctionType {
+
+	private static final long serialVersionUID = 4655952564660669424L;
+
+	private final long decrement;
+	private final long intervalMillis;
+
+	/**
+	 * Constructor. Creates a DutchAuction.
+	 * @param decrement      the amount the price drops by each interval in pence, at least 1
+	 * @param intervalMillis the time between price drops in milliseconds, at least 1
+	 */
+	public DutchAuction(long decrement, long intervalMillis) {
+		this.decrement = Math.max(1, decrement);
+		this.intervalMillis = Math.max(1, intervalMillis);
+	}
+
+	/**
+	 * Returns the price of a listing at a given time.
+	 * @param item the listing
+	 * @param time the time in milliseconds since the epoch
+	 * @return the price in pence
+	 */
+	public long priceAt(AuctionItem item, long time) {
+		return this.priceAt(item.getStartingPrice(), item.getReservePrice(), item.getStartTime(), time);
+	}
+
+	/**
+	 * Returns the price of a listing at a given time.
+	 * @param startingPrice the starting price of the listing in pence
+	 * @param floor         the reserve price of the listing in pence, which the price never drops below
+	 * @param startTime     the time the listing was created
+	 * @param time          the time in milliseconds since the epoch
+	 * @return the price in pence
+	 */
+	public long priceAt(long startingPrice, long floor, long startTime, long time) {
+		long start = Math.max(startingPrice, floor);
+		long drops = Math.max(0, time - startTime) / this.intervalMillis;
+		if(drops >= (start - floor) / this.decrement + 1)
+			return floor;
+		return Math.max(floor, start - drops * this.decrement);
+	}
+
+	/**
+	 * Accepts the first bid at or above the current price, which wins at that price.
+	 * @see AuctionType#bid(AuctionItem, Bid)
+	 */
+	public String bid(AuctionItem item, Bid bid) {
+		long amount = bid.isMaxBid() ? bid.getMaxAmount() : bid.getAmount();
+		long price = this.priceAt(item, bid.getTime());
+		if(amount < price)
+			return "Bid not registered as it is lower than the current price of £" + Money.format(price) + ".";
+		item.addWinningBid(EnglishAuction.autoBid(bid, price, bid.getTime()));
+		return item.closeAuction();
+	}
+
+	/**
+	 * The first accepted bid wins, so there is nothing to decide.
+	 * @see AuctionType#close(AuctionItem)
+	 */
+	public void close(AuctionItem item) {
+	}
+
+	public String describe() {
+		return "Dutch, dropping £" + Money.format(this.decrement) + " every " + (this.intervalMillis / 1000.0) + "s";
+	}
+
+	/**
+	 * Overriding the equals method. Dutch auctions are equal if their settings are.
+	 * @param obj the DutchAuction to be compared
+	 * @return true if this DutchAuction and the comparison object are equal
+	 */
+	public boolean equals(Object obj) {
+		if (!(obj instanceof DutchAuction))
+			return false;
+		DutchAuction other = (DutchAuction) obj;
+		return this.decrement == other.decrement && this.intervalMillis == other.intervalMillis;
+	}
+
+	/**
+	 * Overriding the hashCode method to be consistent with equals.
+	 * @return the hash code of this DutchAuction
+	 */
+	public int hashCode() {
+		return 31 * Long.hashCode(this.decrement) + Long.hashCode(this.intervalMillis);
+	}
+}
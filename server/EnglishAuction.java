@@ -0,0 +1,139 @@
+/**
+ * An English auction: bids are open and ascending, each must beat the highest bid
+ * by the minimum increment, and the highest bidder wins at their bid.
+ *
+ * Buyers can place a maximum bid, which is kept hidden and bid on their behalf.
+ * Only the maximum of the highest bidder is kept: a competing bid is resolved
+ * against it in a single step, so the winner pays the lower of their maximum
+ * and the losing bid plus the minimum increment, and ties go to the earlier bid.
+ * @author Thomas Watkins
+ */
+public class EnglishAuction implements AuctionType {
+
+	private static final long serialVersionUID = 1677309772104638595L;
+
+	/** The English auction, the type of listings that don't set one. */
+	public static final EnglishAuction INSTANCE = new EnglishAuction();
+
+	private EnglishAuction() {
+	}
+
+	/**
+	 * Places a bid. A maximum bid is placed at the lowest amount that makes it the
+	 * highest bid. A bid against the highest bidders maximum bid is resolved
+	 * straight away: if it doesn't beat the maximum the highest bidder is raised to
+	 * just above it, otherwise it wins at just above the maximum or, for a bid with
+	 * no maximum, at its amount.
+	 * @see AuctionType#bid(AuctionItem, Bid)
+	 */
+	public String bid(AuctionItem item, Bid bid) {
+		long increment = item.getMinIncrement();
+		long highest = item.getHighestBid();
+		Bid maxBid = item.getMaxBid();
+		boolean leading = isHighestBidder(item, bid);
+
+		long offer = bid.isMaxBid() ? bid.getMaxAmount() : bid.getAmount();
+		if(item.getLeadingBid() == null && offer < item.getStartingPrice() + increment)
+			return "Bid not registered as it is lower than the starting price plus the minimum increment of £" + Money.format(increment) + ".";
+
+		// The highest bidder may raise their maximum without bidding against themselves
+		if(leading && bid.isMaxBid()) {
+			if(offer <= Math.max(highest, maxBid == null ? 0 : maxBid.getMaxAmount()))
+				return "Bid not registered as it is not above your current maximum bid.";
+			item.setMaxBid(bid);
+			raiseToReserve(item, bid);
+			return AuctionItem.MAX_RAISED;
+		}
+		if(item.getLeadingBid() != null && offer < highest + increment)
+			return "Bid not registered as it is lower than the current highest bid plus the minimum increment of £" + Money.format(increment) + ".";
+
+		// Resolve against the highest bidders maximum, which wins ties as it was placed first
+		if(maxBid != null && !leading) {
+			if(offer <= maxBid.getMaxAmount()) {
+				item.addBid(autoBid(maxBid, Math.min(maxBid.getMaxAmount(), offer + increment), bid.getTime()));
+				return AuctionItem.BID_OUTBID;
+			}
+			long price = bid.isMaxBid() ? Math.min(offer, maxBid.getMaxAmount() + increment) : offer;
+			item.setMaxBid(bid.isMaxBid() ? bid : null);
+			item.addBid(autoBid(bid, price, bid.getTime()));
+			raiseToReserve(item, bid);
+			return AuctionItem.BID_REGISTERED;
+		}
+
+		// Nothing to resolve against, a maximum bid only goes as high as it needs to
+		long price = bid.isMaxBid() ? highest + increment : offer;
+		if(bid.isMaxBid() || maxBid == null || maxBid.getMaxAmount() <= price)
+			item.setMaxBid(bid.isMaxBid() ? bid : null);
+		item.addBid(autoBid(bid, price, bid.getTime()));
+		raiseToReserve(item, bid);
+		return AuctionItem.BID_REGISTERED;
+	}
+
+	/**
+	 * The highest bid wins, so there is nothing to decide.
+	 * @see AuctionType#close(AuctionItem)
+	 */
+	public void close(AuctionItem item) {
+	}
+
+	public String describe() {
+		return "English";
+	}
+
+	/**
+	 * Returns whether a bid was placed by the current highest bidder.
+	 * @param item the listing
+	 * @param bid  the bid
+	 * @return true if the bidder holds the highest bid
+	 */
+	private static boolean isHighestBidder(AuctionItem item, Bid bid) {
+		Bid leading = item.getLeadingBid();
+		return leading != null && leading.getBidder().getClientId() == bid.getBidder().getClientId();
+	}
+
+	/**
+	 * Returns the bid shown for a bidder at a given amount. Bids with no maximum
+	 * are shown as placed.
+	 * @param bid    the bid placed
+	 * @param amount the amount to show in pence
+	 * @param time   the time of the bid that caused it
+	 * @return the bid to show
+	 */
+	static Bid autoBid(Bid bid, long amount, long time) {
+		if(!bid.isMaxBid() && bid.getAmount() == amount)
+			return bid;
+		Bid shown = new Bid(bid.getBidder(), amount);
+		shown.setTime(time);
+		return shown;
+	}
+
+	/**
+	 * Raises the highest bid to the reserve price if the highest bidders maximum
+	 * meets it, as they would otherwise lose an auction they were willing to win.
+	 * @param item the listing
+	 * @param bid  the bid just placed by the highest bidder
+	 */
+	private static void raiseToReserve(AuctionItem item, Bid bid) {
+		Bid maxBid = item.getMaxBid();
+		if(maxBid == null || item.getHighestBid() >= item.getReservePrice() || maxBid.getMaxAmount() < item.getReservePrice())
+			return;
+		item.addBid(autoBid(maxBid, item.getReservePrice(), bid.getTime()));
+	}
+
+	/**
+	 * Overriding the hashCode method so it is the same in every process, as the
+	 * state hashes of replicas are compared.
+	 * @return the hash code of this EnglishAuction
+	 */
+	public int hashCode() {
+		return 1;
+	}
+
+	/**
+	 * Keeps a single instance when deserialized.
+	 * @return the shared instance
+	 */
+	private Object readResolve() {
+		return INSTANCE;
+	}
+}
@@ -0,0 +1,320 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The stream of events a Backend has applied. The most recent events are kept
+ * in memory, and if a segment file is configured every event is appended to it
+ * by a background thread, so logging never waits on the disk while the Backend
+ * holds its lock. Consumers read from a sequence number onwards, either through
+ * a Backend or straight from the segment file, and resume from the sequence
+ * number after the last event they read.
+ *
+ * Each record in the segment file is the length of the event followed by the
+ * event as written by {@link StreamEvent#writeTo(java.io.DataOutput)}, which
+ * starts with its sequence number. Every few records the position is indexed,
+ * so a read seeks close to where it starts rather than scanning the file.
+ * @author Thomas Watkins
+ */
+public class EventLog {
+
+	private static final int INDEX_INTERVAL = 256;
+	private static final int HEADER = Integer.BYTES + Long.BYTES;
+	private static final int CHUNK = 64 * 1024;
+
+	private final FileChannel segment;
+	private final ExecutorService writer;
+	private final boolean fsync;
+	private final Metrics metrics;
+	private final int capacity;
+	private final ArrayDeque<StreamEvent> recent;
+	private final TreeMap<Long, Long> index;
+	private volatile long size;
+	private long records;
+	private long lastSeq;
+
+	/**
+	 * Constructor. Creates an EventLog, opening the segment file and indexing any
+	 * events already in it. A record left half written by a crash is cut off.
+	 * @param path     the segment file, or null to keep events in memory only
+	 * @param capacity the number of recent events kept in memory
+	 * @param fsync    whether to force each write to the disk before the next
+	 * @param metrics  the metrics to record appends and reads to
+	 * @throws IOException if the segment file could not be opened
+	 */
+	public EventLog(String path, int capacity, boolean fsync, Metrics metrics) throws IOException {
+		this.capacity = Math.max(1, capacity);
+		this.fsync = fsync;
+		this.metrics = metrics;
+		this.recent = new ArrayDeque<>();
+		this.index = new TreeMap<>();
+		this.lastSeq = -1;
+		if (path == null) {
+			this.segment = null;
+			this.writer = null;
+			return;
+		}
+		this.segment = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.writer = Executors.newSingleThreadExecutor();
+
+		// Index the events already written, stopping at the first incomplete record
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		while (readHeader(this.segment, position, header)) {
+			long seq = header.getLong(Integer.BYTES);
+			if (this.records++ % INDEX_INTERVAL == 0)
+				this.index.put(seq, position);
+			this.lastSeq = seq;
+			position += Integer.BYTES + header.getInt(0);
+		}
+		this.segment.truncate(position);
+		this.size = position;
+	}
+
+	/**
+	 * Appends events. Must be called in the order the events were applied.
+	 * @param event the event to append
+	 */
+	public synchronized void append(StreamEvent event) {
+		this.recent.addLast(event);
+		if (this.recent.size() > this.capacity)
+			this.recent.removeFirst();
+		this.metrics.increment("events.appended");
+		if (this.writer != null)
+			this.writer.execute(() -> this.write(event));
+	}
+
+	/**
+	 * Removes every event from a sequence number onwards, so the log matches a
+	 * state that was installed from another Backend or seeded afresh.
+	 * @param nextSeq the sequence number the next event will be given
+	 */
+	public synchronized void rewind(long nextSeq) {
+		boolean removed = false;
+		while (!this.recent.isEmpty() && this.recent.peekLast().getSeq() >= nextSeq) {
+			this.recent.removeLast();
+			removed = true;
+		}
+		if (removed)
+			this.metrics.increment("events.rewinds");
+		if (this.writer != null)
+			this.writer.execute(() -> this.truncate(nextSeq));
+	}
+
+	/**
+	 * Returns events from a sequence number onwards. Events still in memory are
+	 * read from memory, older events from the segment file. Sequence numbers
+	 * this Backend never applied, such as those before it joined, are skipped.
+	 * @param fromSeq the sequence number of the first event to read
+	 * @param max     the maximum number of events to read
+	 * @return        the events in order, empty if there are none yet
+	 */
+	public ArrayList<StreamEvent> read(long fromSeq, int max) throws IOException {
+		long start = System.nanoTime();
+		ArrayList<StreamEvent> events = new ArrayList<>();
+		synchronized (this) {
+			StreamEvent first = this.recent.peekFirst();
+			if (first != null && first.getSeq() <= fromSeq) {
+				this.readRecent(fromSeq, max, events);
+				this.metrics.recordSince("events.read", start);
+				return events;
+			}
+		}
+		if (this.segment != null)
+			this.readSegment(fromSeq, max, events);
+
+		// Continue with events that are in memory but not yet written
+		long next = events.isEmpty() ? fromSeq : events.get(events.size() - 1).getSeq() + 1;
+		synchronized (this) {
+			this.readRecent(next, max - events.size(), events);
+		}
+		this.metrics.recordSince("events.read", start);
+		return events;
+	}
+
+	/**
+	 * Copies the records in a segment file from a sequence number onwards to a
+	 * channel without copying them through the heap, e.g. to a socket or pipe.
+	 * @param segment the segment file
+	 * @param fromSeq the sequence number of the first record to copy
+	 * @param target  the channel to copy to
+	 * @return        the number of bytes copied
+	 */
+	public static long transferTo(FileChannel segment, long fromSeq, WritableByteChannel target) throws IOException {
+		long position = seek(segment, 0, fromSeq);
+		long end = segment.size();
+		long copied = 0;
+		while (position + copied < end)
+			copied += segment.transferTo(position + copied, end - position - copied, target);
+		return copied;
+	}
+
+	/**
+	 * Finds the position of the first complete record from a sequence number onwards.
+	 * @param segment  the segment file
+	 * @param position the position of a record at or before it
+	 * @param fromSeq  the sequence number
+	 * @return         the position of the record, or the end of the complete records
+	 */
+	static long seek(FileChannel segment, long position, long fromSeq) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		while (readHeader(segment, position, header) && header.getLong(Integer.BYTES) < fromSeq)
+			position += Integer.BYTES + header.getInt(0);
+		return position;
+	}
+
+	/**
+	 * Reads the header of a complete record.
+	 * @param segment  the segment file
+	 * @param position the position of the record
+	 * @param header   the buffer to read the length and sequence number into
+	 * @return         true if there is a complete record at the position
+	 */
+	private static boolean readHeader(FileChannel segment, long position, ByteBuffer header) throws IOException {
+		header.clear();
+		while (header.hasRemaining()) {
+			if (segment.read(header, position + header.position()) < 0)
+				return false;
+		}
+		return position + Integer.BYTES + header.getInt(0) <= segment.size();
+	}
+
+	/**
+	 * Closes the segment file once every appended event has been written.
+	 */
+	public void close() {
+		if (this.writer == null)
+			return;
+		this.writer.shutdown();
+		try {
+			this.writer.awaitTermination(5, TimeUnit.SECONDS);
+			this.segment.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void readRecent(long fromSeq, int max, List<StreamEvent> events) {
+		Iterator<StreamEvent> it = this.recent.iterator();
+		while (it.hasNext() && events.size() < max) {
+			StreamEvent e = it.next();
+			if (e.getSeq() >= fromSeq)
+				events.add(e);
+		}
+	}
+
+	/**
+	 * Reads events from the segment file, seeking from the nearest indexed record.
+	 */
+	private void readSegment(long fromSeq, int max, List<StreamEvent> events) throws IOException {
+		long position;
+		synchronized (this) {
+			Map.Entry<Long, Long> floor = this.index.floorEntry(fromSeq);
+			position = floor == null ? 0 : floor.getValue();
+		}
+		long end = this.size;
+		position = seek(this.segment, position, fromSeq);
+		if (position >= end || max <= 0)
+			return;
+
+		// Read in chunks, carrying a record split across chunks over to the next one
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+		while (position < end && events.size() < max) {
+			// Never read past the records the writer has finished
+			buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + end - position));
+			int read = this.segment.read(buffer, position);
+			if (read < 0)
+				break;
+			position += read;
+			buffer.flip();
+			while (buffer.remaining() >= Integer.BYTES && events.size() < max) {
+				int length = buffer.getInt(buffer.position());
+				if (buffer.remaining() < Integer.BYTES + length)
+					break;
+				buffer.getInt();
+				byte[] record = new byte[length];
+				buffer.get(record);
+				events.add(StreamEvent.readFrom(new DataInputStream(new ByteArrayInputStream(record))));
+			}
+			if (buffer.remaining() >= Integer.BYTES && Integer.BYTES + buffer.getInt(buffer.position()) > buffer.capacity())
+				buffer = ByteBuffer.allocate(Integer.BYTES + buffer.getInt(buffer.position())).put(buffer);
+			else
+				buffer.compact();
+		}
+	}
+
+	/**
+	 * Writes an event to the end of the segment file. Runs on the writer thread.
+	 */
+	private void write(StreamEvent event) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0);
+			event.writeTo(out);
+			ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+			record.putInt(0, record.capacity() - Integer.BYTES);
+
+			long position = this.size;
+			while (record.hasRemaining())
+				this.segment.write(record, position + record.position());
+			if (this.fsync)
+				this.segment.force(false);
+			synchronized (this) {
+				if (this.records++ % INDEX_INTERVAL == 0)
+					this.index.put(event.getSeq(), position);
+				this.lastSeq = event.getSeq();
+			}
+			this.size = position + record.capacity();
+			this.metrics.add("events.bytes", record.capacity());
+		} catch (IOException e) {
+			this.metrics.increment("events.errors");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Cuts the segment file before the first record from a sequence number onwards.
+	 * Runs on the writer thread.
+	 */
+	private void truncate(long nextSeq) {
+		try {
+			long position;
+			synchronized (this) {
+				if (this.lastSeq < nextSeq)
+					return;
+				Map.Entry<Long, Long> floor = this.index.floorEntry(nextSeq);
+				position = floor == null ? 0 : floor.getValue();
+			}
+			position = seek(this.segment, position, nextSeq);
+			this.segment.truncate(position);
+			this.size = position;
+			synchronized (this) {
+				this.index.tailMap(nextSeq, true).clear();
+				this.lastSeq = nextSeq - 1;
+				// Index the next record written, as the count of records is no longer exact
+				this.records = 0;
+			}
+		} catch (IOException e) {
+			this.metrics.increment("events.errors");
+			e.printStackTrace();
+		}
+	}
+}
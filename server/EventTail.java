@@ -0,0 +1,55 @@
+import java.io.DataInputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a Backends event segment file from a sequence number onwards, without
+ * going through the Backend. Prints each event, or with --raw copies the records
+ * to standard output as they are stored using {@link EventLog#transferTo}, so they
+ * can be piped to another consumer without being decoded. The sequence number to
+ * resume from is printed to standard error.
+ *
+ * Usage: java EventTail segment-file [fromSeq] [--raw]
+ * @author Thomas Watkins
+ */
+public class EventTail {
+
+	/**
+	 * Main method. Reads the segment file.
+	 * @param args the segment file, the optional sequence number to start from and the optional --raw flag
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: java EventTail segment-file [fromSeq] [--raw]");
+			System.exit(1);
+		}
+		long fromSeq = args.length > 1 && !args[1].equals("--raw") ? Long.parseLong(args[1]) : 0;
+		boolean raw = args[args.length - 1].equals("--raw");
+
+		try (FileChannel segment = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+			if (raw) {
+				FileChannel out = new FileOutputStream(FileDescriptor.out).getChannel();
+				long bytes = EventLog.transferTo(segment, fromSeq, out);
+				System.err.printf("copied %d bytes\n", bytes);
+				return;
+			}
+
+			long next = fromSeq;
+			DataInputStream in = new DataInputStream(Channels.newInputStream(segment.position(EventLog.seek(segment, 0, fromSeq))));
+			long end = segment.size();
+			while (segment.position() + Integer.BYTES <= end) {
+				int length = in.readInt();
+				if (segment.position() + length > end)
+					break;
+				StreamEvent event = StreamEvent.readFrom(in);
+				System.out.println(event);
+				next = event.getSeq() + 1;
+			}
+			System.err.printf("resume from %d\n", next);
+		}
+	}
+}
@@ -0,0 +1,291 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jgroups.protocols.DELAY;
+import org.jgroups.protocols.DISCARD;
+import org.jgroups.stack.ProtocolStack;
+
+/**
+ * Exercises voting and repair under faults. Starts Backends and a Frontend in
+ * this process on a loopback stack with DISCARD and DELAY protocols, then runs
+ * a fixed script of faults against the last Backend while a client bids through
+ * the Frontend: a slow replica, a lossy replica, a replica with divergent state
+ * and a partitioned replica. For each fault it reports the bid latency seen by
+ * the client, how many divergent responses and state repairs there were, how
+ * many bytes of state were transferred, and how long after the fault ended the
+ * replicas converged. Exits with status 1 if any fault left the replicas diverged.
+ *
+ * Usage: java -cp jgroups-3.6.20.Final.jar:. -Djava.net.preferIPv4Stack=true FaultHarness [backends]
+ * Run from the server directory so the users keys are found.
+ * @author Thomas Watkins
+ */
+public class FaultHarness {
+
+	private static final int BIDS = 100;
+	private static final int SLOW_MS = 50;
+	private static final double LOSS = 0.2;
+	private static final long RECOVERY_TIMEOUT = 30000;
+	private static final long VIEW_TIMEOUT = 30000;
+
+	private final List<Backend> backends;
+	private final Frontend frontend;
+	private final MBeanServer mbeans;
+	private SessionToken buyer;
+	private int auctionId;
+	private long amount;
+	private boolean failed;
+
+	/**
+	 * Constructor. Starts the Backends and the Frontend.
+	 * @param replicas the number of Backends
+	 */
+	public FaultHarness(int replicas) throws Exception {
+		this.mbeans = ManagementFactory.getPlatformMBeanServer();
+		this.backends = new ArrayList<>();
+		for (int i = 0; i < replicas; i++)
+			this.backends.add(new Backend());
+		this.frontend = new Frontend("harness");
+		this.awaitView(this.backends.get(0), replicas + 1);
+	}
+
+	/**
+	 * Main method. Runs every fault in turn.
+	 * @param args the optional number of Backends
+	 */
+	public static void main(String[] args) throws Exception {
+		int replicas = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		if (System.getProperty("group.stack") == null)
+			System.setProperty("group.stack", "auction-faults.xml");
+		if (System.getProperty("replica.checkIntervalMs") == null)
+			System.setProperty("replica.checkIntervalMs", "1000");
+		try {
+			LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+		} catch (Exception e) {
+			// A registry is already running
+		}
+
+		FaultHarness harness = new FaultHarness(replicas);
+		harness.setUp();
+		System.out.printf("\n%-16s %8s %8s %8s %11s %8s %12s %13s %10s\n", "fault", "p50 (ms)", "p99 (ms)",
+				"max (ms)", "divergence", "repairs", "repair bytes", "recovery (ms)", "converged");
+		harness.noFault();
+		harness.slowReplica();
+		harness.lossyReplica();
+		harness.divergentReplica();
+		harness.partitionedReplica();
+		System.exit(harness.failed ? 1 : 0);
+	}
+
+	/**
+	 * Logs in and creates the auction that is bid on.
+	 */
+	private void setUp() throws Exception {
+		SessionToken seller = this.login("tom");
+		this.buyer = this.login("max");
+		this.auctionId = this.frontend.createAuction(seller,
+				new AuctionItem(null, "harness", "bid on under faults", true, 100, 100));
+		this.amount = 100;
+
+		// Warm up before anything is measured
+		this.bid(BIDS);
+	}
+
+	/**
+	 * Bids with no fault, as a baseline.
+	 */
+	private void noFault() throws Exception {
+		Counters before = this.counters();
+		LatencyHistogram latency = this.bid(BIDS);
+		this.report("none", latency, before, this.awaitConvergence());
+	}
+
+	/**
+	 * Delays every message the last Backend receives.
+	 */
+	private void slowReplica() throws Exception {
+		ProtocolStack stack = this.last().getChannel().getProtocolStack();
+		DELAY delay = new DELAY();
+		delay.setInDelay(SLOW_MS);
+		Counters before = this.counters();
+		stack.insertProtocol(delay, ProtocolStack.ABOVE, DISCARD.class);
+		delay.init();
+		LatencyHistogram latency = this.bid(BIDS);
+
+		// Let delayed messages pass before taking DELAY out of the stack
+		delay.setInDelay(0);
+		Thread.sleep(SLOW_MS * 4);
+		stack.removeProtocol(delay);
+		delay.destroy();
+		this.report("slow replica", latency, before, this.awaitConvergence());
+	}
+
+	/**
+	 * Drops a share of the messages the last Backend sends and receives, so they
+	 * have to be retransmitted.
+	 */
+	private void lossyReplica() throws Exception {
+		DISCARD discard = (DISCARD) this.last().getChannel().getProtocolStack().findProtocol(DISCARD.class);
+		Counters before = this.counters();
+		discard.setUpDiscardRate(LOSS).setDownDiscardRate(LOSS);
+		LatencyHistogram latency = this.bid(BIDS);
+		discard.setUpDiscardRate(0).setDownDiscardRate(0);
+		this.report("lossy replica", latency, before, this.awaitConvergence());
+	}
+
+	/**
+	 * Applies a bid to the last Backend only, so it answers the next bid
+	 * differently and must be repaired by the Frontend. The bid is far above the
+	 * others, so the replica keeps answering differently until it is repaired even
+	 * if it is a follower the Frontend doesn't wait on when the fault starts.
+	 */
+	private void divergentReplica() throws Exception {
+		UserAccount bidder = new UserAccount("max", null, Role.of(Role.BUYER));
+		bidder.setClientId(this.buyer.getClientId());
+		Counters before = this.counters();
+		this.last().bidOnItemReq(this.auctionId, new Bid(bidder, this.amount + 100000000));
+		LatencyHistogram latency = this.bid(BIDS);
+		this.report("divergent state", latency, before, this.awaitConvergence());
+	}
+
+	/**
+	 * Cuts the last Backend off from the group until it is removed from the view,
+	 * bids without it, then reconnects it and waits for the groups to merge.
+	 */
+	private void partitionedReplica() throws Exception {
+		DISCARD discard = (DISCARD) this.last().getChannel().getProtocolStack().findProtocol(DISCARD.class);
+		int members = this.backends.get(0).getChannel().getView().size();
+		Counters before = this.counters();
+		discard.setDiscardAll(true);
+		this.awaitView(this.backends.get(0), members - 1);
+		LatencyHistogram latency = this.bid(BIDS);
+		discard.setDiscardAll(false);
+		long healed = System.nanoTime();
+		this.awaitView(this.last(), members);
+		this.report("partition", latency, before, this.awaitConvergence(healed));
+	}
+
+	/**
+	 * Places bids through the Frontend one after another.
+	 * @param count the number of bids
+	 * @return the latency of each bid
+	 */
+	private LatencyHistogram bid(int count) throws Exception {
+		LatencyHistogram latency = new LatencyHistogram();
+		for (int i = 0; i < count; i++) {
+			long start = System.nanoTime();
+			this.frontend.bidOnItem(this.buyer, this.auctionId, this.amount += 100);
+			latency.record(System.nanoTime() - start);
+		}
+		return latency;
+	}
+
+	/**
+	 * Waits for the replicas to converge, placing a bid every few milliseconds as
+	 * client traffic is what reveals a divergent replica to the Frontend.
+	 * @return the milliseconds until the replicas converged, or -1 if they didn't
+	 */
+	private long awaitConvergence() throws Exception {
+		return this.awaitConvergence(System.nanoTime());
+	}
+
+	/**
+	 * Waits for the replicas to converge.
+	 * @param since the time the fault ended, from System.nanoTime()
+	 * @return the milliseconds from since until the replicas converged, or -1 if they didn't
+	 */
+	private long awaitConvergence(long since) throws Exception {
+		long deadline = System.currentTimeMillis() + RECOVERY_TIMEOUT;
+		while (System.currentTimeMillis() < deadline) {
+			if (this.converged())
+				return (System.nanoTime() - since) / 1000000;
+			this.bid(1);
+			Thread.sleep(20);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns whether every Backend holds the same state.
+	 * @return true if the replicas have converged
+	 */
+	private boolean converged() {
+		BackendState first = this.backends.get(0).getState();
+		for (Backend b : this.backends) {
+			if (!first.equals(b.getState()))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Waits until a Backend sees a number of members in its view.
+	 * @param backend the Backend
+	 * @param members the number of members
+	 */
+	private void awaitView(Backend backend, int members) throws Exception {
+		long deadline = System.currentTimeMillis() + VIEW_TIMEOUT;
+		while (backend.getChannel().getView().size() != members) {
+			if (System.currentTimeMillis() > deadline)
+				throw new IllegalStateException("view of " + members + " members not formed");
+			Thread.sleep(50);
+		}
+	}
+
+	private Backend last() {
+		return this.backends.get(this.backends.size() - 1);
+	}
+
+	private SessionToken login(String username) throws Exception {
+		String challenge = this.frontend.getChallenge(username);
+		byte[] key = Files.readAllBytes(Paths.get("../UsersKeyStore/" + username + ".txt"));
+		Cipher cipher = Cipher.getInstance("DES");
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "DES"));
+		return this.frontend.validateChallenge(cipher.doFinal(challenge.getBytes()), username);
+	}
+
+	/**
+	 * The Frontend and Backend counters a fault is measured by.
+	 */
+	private static class Counters {
+		private long divergence;
+		private long repairs;
+		private long repairBytes;
+	}
+
+	/**
+	 * Reads the current counters of every server from their metrics MBeans.
+	 * @return the counters
+	 */
+	private Counters counters() throws Exception {
+		Counters c = new Counters();
+		for (ObjectName name : this.mbeans.queryNames(new ObjectName("auction:type=frontend,*"), null))
+			c.divergence += JMX.newMBeanProxy(this.mbeans, name, MetricsMBean.class).getCounter("bidOnItem.divergence");
+		for (ObjectName name : this.mbeans.queryNames(new ObjectName("auction:type=backend,*"), null)) {
+			MetricsMBean metrics = JMX.newMBeanProxy(this.mbeans, name, MetricsMBean.class);
+			c.repairs += metrics.getCounter("resync.invocations");
+			c.repairBytes += metrics.getCounter("resync.stateBytes");
+		}
+		return c;
+	}
+
+	private void report(String fault, LatencyHistogram latency, Counters before, long recovery) throws Exception {
+		Counters after = this.counters();
+		boolean converged = recovery >= 0;
+		this.failed |= !converged;
+		System.out.printf("%-16s %8.2f %8.2f %8.2f %11d %8d %12d %13s %10s\n", fault, latency.getPercentileMillis(50),
+				latency.getPercentileMillis(99), latency.getMaxMillis(), after.divergence - before.divergence,
+				after.repairs - before.repairs, after.repairBytes - before.repairBytes,
+				converged ? Long.toString(recovery) : "-", converged ? "yes" : "NO");
+	}
+}
@@ -1,19 +1,34 @@
 import org.jgroups.Address;
 import org.jgroups.JChannel;
 import org.jgroups.MembershipListener;
+import org.jgroups.MergeView;
+import org.jgroups.Message;
 import org.jgroups.View;
 import org.jgroups.blocks.RequestOptions;
 import org.jgroups.blocks.ResponseMode;
 import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.blocks.RspFilter;
+import org.jgroups.util.Rsp;
 import org.jgroups.util.RspList;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * A Frontend Server for an auctioning system that uses RMI to communicate with a Client.
@@ -24,274 +39,719 @@ import java.util.stream.Stream;
 public class Frontend implements MembershipListener, IAuction {
 	
 	public static final long serialVersionUID = 42069;
-	public final String SERVER_NAME = "myserver";
+	public static final String SERVER_NAME = "myserver";
 	public final int REGISTRY_PORT = 1099;
 	private JChannel groupChannel;
 	private RpcDispatcher dispatcher;
 	private final int DISPATCHER_TIMEOUT = 2000;
+	private final int MAX_EVENTS = 1000;
+	private final int MAX_PAGE = 100;
+	private final Metrics metrics;
+	private final ReplicaMonitor replicas;
+	private final Membership membership;
+	private final BidCoalescer bidCoalescer;
+	private final NotificationHub notifications;
+	private final ListingCache listingCache;
+	private final SessionManager sessions;
+	private final AdmissionControl admission;
+	private final long minIncrement;
+	private final ScheduledExecutorService scheduler;
+	private final int PROBE_INTERVAL = 500;
+	private static final String INVALID_SESSION = "Invalid or expired session.";
+	private static final String OVERLOADED = "The server is busy, please try again shortly.";
+	// Read-only Backend methods, sent out of band so they neither wait behind nor delay ordered writes.
+	// The reads that fill the listing cache stay ordered, so they can't overtake the write behind a
+	// listingChanged notice and put a listing from before it back in the cache.
+	private static final Set<String> READ_ONLY = new HashSet<>(
+			Arrays.asList("getAuctionReq", "searchAuctionsReq", "listingsBySellerReq", "listingsByBidderReq"));
+	private final boolean readsOutOfBand;
 
 	/**
 	 * Constructor. Creates a Frontend.
 	 * Connects to the JGroups channel and binds the server to RMI registry.
 	 * 
+	 * @param serverName the name to bind this server to, unique per Frontend
 	 * @throws RemoteException
 	 */
-	public Frontend() throws RemoteException {		
-		this.groupChannel = GroupUtils.connect();
+	public Frontend(String serverName) throws RemoteException {		
+		this.metrics = new Metrics("frontend");
+		this.replicas = new ReplicaMonitor(this.metrics);
+		this.membership = new Membership(this.replicas, this.metrics);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor();
+		this.bidCoalescer = new BidCoalescer(this::bidOnItemBatch, this.metrics);
+		this.notifications = new NotificationHub(this.metrics);
+		this.listingCache = new ListingCache();
+		this.minIncrement = Money.parse(System.getProperty("bid.minIncrement", "0.01"));
+		this.readsOutOfBand = Boolean.parseBoolean(System.getProperty("reads.oob", "true"));
+		this.sessions = new SessionManager(() -> this.replicatedCall("getSessionKey", "getSessionKeyReq",
+				new Object[] {}, new Class[] {}, null));
+		this.admission = new AdmissionControl(this.metrics);
+		this.groupChannel = GroupUtils.connect(GroupUtils.FRONTEND);
 		if (this.groupChannel == null)			
 			System.exit(1); // error to be printed by the 'connect' function
 		
-		this.bind(this.SERVER_NAME);
+		this.bind(serverName);
 		
 		// Make this instance of Frontend a dispatcher in the channel (group)
 		this.dispatcher = new RpcDispatcher(this.groupChannel, this);
 		this.dispatcher.setMembershipListener(this);
+		this.membership.viewAccepted(this.groupChannel.getView());
+
+		this.metrics.registerMBean(this.groupChannel.getAddressAsString());
+		this.metrics.startHttpEndpoint();
+
+		// Periodically check whether slow followers have caught up
+		this.scheduler.scheduleWithFixedDelay(this::probeFollowers, this.PROBE_INTERVAL, this.PROBE_INTERVAL,
+				TimeUnit.MILLISECONDS);
+
+		// Periodically forget the rate limits of callers that have gone quiet
+		this.scheduler.scheduleWithFixedDelay(this.admission::evictIdle, 1, 1, TimeUnit.MINUTES);
+
+		// Periodically check that the replicas haven't silently diverged
+		long checkInterval = Long.getLong("replica.checkIntervalMs", 5000);
+		if (checkInterval > 0)
+			this.scheduler.scheduleWithFixedDelay(this::checkReplicas, checkInterval, checkInterval,
+					TimeUnit.MILLISECONDS);
+
+		// Start and stop local Backends as load changes
+		if (Boolean.getBoolean("autoscale")) {
+			Autoscaler autoscaler = new Autoscaler(this.membership, new BackendLauncher(),
+					() -> this.membership.isCoordinator(this.groupChannel.getAddress()), this.metrics);
+			long interval = Long.getLong("autoscale.intervalMs", 1000);
+			this.scheduler.scheduleWithFixedDelay(autoscaler::evaluate, interval, interval, TimeUnit.MILLISECONDS);
+		}
 	}
 
 	/**
 	 * @see IAuction#createAuction()
 	 */
-	public int createAuction(AuctionItem item) throws RemoteException {
-		try {
-			RspList<Integer> responses = this.dispatcher.callRemoteMethods(null, "createAuctionReq",
-					new Object[] { item }, new Class[] { AuctionItem.class },
-					new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
-
-			// If responses are all equal then return first response
-			if (allEqual(responses))
-				return responses.getResults().get(0);
+	public int createAuction(SessionToken session, AuctionItem item) throws RemoteException {
+		return this.admit("createAuction", session, -1, -1, () -> {
+			// Fix the increment and start time on the item so every replica validates bids against the same values
+			item.setMinIncrement(this.minIncrement);
+			item.setStartTime(System.currentTimeMillis());
+			int auctionId = this.replicatedCall("createAuction", "createAuctionReq",
+					new Object[] { session.getClientId(), item }, new Class[] { int.class, AuctionItem.class }, -1);
+			if (auctionId > 0)
+				this.listingCache.invalidate(auctionId);
+			return auctionId;
+		});
+	}
 
-			// Otherwise take majority response and update erroneous replica
-			int majority = (int) findMajority(responses.getResults());
-			List<Address> dests = new ArrayList<Address>(groupChannel.getView().getMembers());
-			// Remove this member
-			dests.remove(groupChannel.getAddress());
-
-			// Check all address responses if it doesn't match the majority response then update			
-			for (Address a : dests) {
-				if (!(responses.getValue(a).equals(majority))) {
-					// Update A
-					this.dispatcher.callRemoteMethod(a, "update", new Object[] {}, new Class[] {},
-							new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
-				}
+	/**
+	 * @see IAuction#closeAuction()
+	 */
+	public String closeAuction(SessionToken session, int auctionId) throws RemoteException {
+		return this.admit("closeAuction", session, OVERLOADED, INVALID_SESSION, () -> {
+			// Stamped here rather than on each Backend, so every replica records the same close time
+			String result = this.replicatedCall("closeAuction", "closeAuctionReq",
+					new Object[] { auctionId, session.getClientId(), System.currentTimeMillis() },
+					new Class[] { int.class, int.class, long.class }, "Error");
+			if (result.startsWith("The winner") || result.startsWith("The reserve")) {
+				this.listingCache.invalidate(auctionId);
+				this.notifications.auctionClosed(auctionId, result);
+				this.notifyPeers("auctionEnded", new Object[] { auctionId, result },
+						new Class[] { int.class, String.class });
 			}
-			return majority;
-		} catch (Exception e) {
-			e.printStackTrace();
+			return result;
+		});
+	}
+
+	/**
+	 * @see IAuction#bidOnItem()
+	 */
+	public String bidOnItem(SessionToken session, int auctionId, long amount) throws RemoteException {
+		return this.admit("bidOnItem", session, OVERLOADED, INVALID_SESSION,
+				() -> this.placeBid(session, auctionId, amount, 0));
+	}
+
+	/**
+	 * @see IAuction#placeMaxBid()
+	 */
+	public String placeMaxBid(SessionToken session, int auctionId, long maxAmount) throws RemoteException {
+		return this.admit("placeMaxBid", session, OVERLOADED, INVALID_SESSION,
+				() -> this.placeBid(session, auctionId, 0, maxAmount));
+	}
+
+	/**
+	 * Places a bid or a maximum bid, coalesced with concurrent bids on the same auction.
+	 * @param session   the verified session of the buyer
+	 * @param auctionId the auction ID of the auction to be bid on
+	 * @param amount    the amount of the bid in pence, for a bid
+	 * @param maxAmount the hidden maximum in pence, for a maximum bid
+	 * @return          the result of the bid
+	 */
+	private String placeBid(SessionToken session, int auctionId, long amount, long maxAmount) {
+		UserAccount bidder = new UserAccount(session.getUsername(), null, session.getRoles());
+		bidder.setClientId(session.getClientId());
+		Bid bid = new Bid(bidder, amount);
+		bid.setMaxAmount(maxAmount);
+		bid.setTime(System.currentTimeMillis());
+		BidResult placed = this.bidCoalescer.submit(auctionId, bid);
+		String result = placed.getMessage();
+		if (AuctionItem.changed(result))
+			this.listingCache.invalidate(auctionId);
+		// Subscribers are sent the amount this bid left, which a maximum bid or the reserve may have set.
+		// Raising a maximum bid leaves the highest bid as it was, and sealed bids have none to send.
+		Bid highest = placed.getHighestBid();
+		if (highest != null && !result.equals(AuctionItem.MAX_RAISED)) {
+			this.notifications.bidAccepted(auctionId, highest);
+			this.notifyPeers("bidAccepted", new Object[] { auctionId, highest }, new Class[] { int.class, Bid.class });
+		}
+		// A bid that wins a Dutch auction closes it
+		if (AuctionItem.isWin(result)) {
+			this.notifications.auctionClosed(auctionId, result);
+			this.notifyPeers("auctionEnded", new Object[] { auctionId, result }, new Class[] { int.class, String.class });
 		}
-		return -1;
+		return result;
 	}
 
 	/**
-	 * @see IAuction#closeAuction()
+	 * Places a batch of coalesced bids on an auction in a single replicated call.
+	 * @param auctionId the auction ID of the auction to be bid on
+	 * @param bids      the bids to be placed in arrival order
+	 * @return          the majority result for each bid, or null if the call failed
 	 */
-	public String closeAuction(int auctionId, UserAccount user) throws RemoteException {
-		try {
-			RspList<String> responses = this.dispatcher.callRemoteMethods(null, "closeAuctionReq",
-					new Object[] { auctionId, user }, new Class[] { int.class, UserAccount.class },
-					new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
+	private ArrayList<BidResult> bidOnItemBatch(int auctionId, ArrayList<Bid> bids) {
+		return this.replicatedCall("bidOnItem", "bidOnItemBatchReq", new Object[] { auctionId, bids },
+				new Class[] { int.class, ArrayList.class }, null);
+	}
 
-			// If responses are all equal then return first response
-			if (allEqual(responses))
-				return responses.getResults().get(0);
+	/**
+	 * @see IAuction#browseAuctions()
+	 */
+	public ArrayList<ListingSummary> browseAuctions() throws RemoteException {
+		return this.admit("browseAuctions", null, this::browse);
+	}
 
-			// Otherwise take majority response and update erroneous replica
-			String majority = (String) findMajority(responses.getResults());
-			List<Address> dests = new ArrayList<Address>(groupChannel.getView().getMembers());
-			// Remove this member
-			dests.remove(groupChannel.getAddress());
-
-			// Check all address responses if it doesn't match the majority response then update			
-			for (Address a : dests) {
-				if (!(responses.getValue(a).equals(majority))) {
-					// Update A
-					this.dispatcher.callRemoteMethod(a, "update", new Object[] {}, new Class[] {},
-							new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
-				}
+	/**
+	 * Returns a summary of every listing, from the cache where possible.
+	 * @return the summaries, or null if the call failed
+	 */
+	private ArrayList<ListingSummary> browse() {
+		// Serve from the cache if nothing has changed
+		ArrayList<ListingSummary> cached = this.listingCache.snapshot();
+		if (cached != null) {
+			this.metrics.increment("browseAuctions.cacheHits");
+			return cached;
+		}
+		this.metrics.increment("browseAuctions.cacheMisses");
+
+		// Only re-fetch the stale listings if the rest of the cache is still valid
+		long version = this.listingCache.getVersion();
+		List<Integer> stale = this.listingCache.getStale();
+		if (stale != null) {
+			ArrayList<ListingSummary> items = this.replicatedCall("browseAuctions", "getAuctionsReq",
+					new Object[] { new ArrayList<>(stale) }, new Class[] { ArrayList.class }, null);
+			if (items != null && this.listingCache.refresh(version, stale, items)) {
+				cached = this.listingCache.snapshot();
+				if (cached != null)
+					return cached;
 			}
-			return majority;
-		} catch (Exception e) {
-			e.printStackTrace();
+			version = this.listingCache.getVersion();
 		}
-		return "Error";
+
+		ArrayList<ListingSummary> all = this.replicatedCall("browseAuctions", "browseAuctionsReq", new Object[] {},
+				new Class[] {}, null);
+		if (all != null)
+			this.listingCache.fill(version, all);
+		return all;
 	}
 
 	/**
-	 * @see IAuction#bidOnItem()
+	 * @see IAuction#searchAuctions()
 	 */
-	public String bidOnItem(int auctionId, Bid bid) throws RemoteException {
-		try {
-			RspList<String> responses = this.dispatcher.callRemoteMethods(null, "bidOnItemReq",
-					new Object[] { auctionId, bid }, new Class[] { int.class, Bid.class },
-					new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
+	public ArrayList<ListingSummary> searchAuctions(ListingQuery query) throws RemoteException {
+		return this.admit("searchAuctions", null, () -> this.replicatedCall("searchAuctions",
+				"searchAuctionsReq", new Object[] { query }, new Class[] { ListingQuery.class }, null));
+	}
 
-			// If responses are all equal then return first response
-			if (allEqual(responses))
-				return responses.getResults().get(0);
+	/**
+	 * @see IAuction#getAuction()
+	 */
+	public AuctionItem getAuction(int auctionId) throws RemoteException {
+		return this.admit("getAuction", null, () -> this.replicatedCall("getAuction", "getAuctionReq",
+				new Object[] { auctionId }, new Class[] { int.class }, null));
+	}
 
-			// Otherwise take majority response and update erroneous replica
-			String majority = (String) findMajority(responses.getResults());
-			List<Address> dests = new ArrayList<Address>(groupChannel.getView().getMembers());
-			// Remove this member
-			dests.remove(groupChannel.getAddress());
-
-			// Check all address responses if it doesn't match the majority response then update			
-			for (Address a : dests) {
-				if (!(responses.getValue(a).equals(majority))) {
-					// Update A
-					this.dispatcher.callRemoteMethod(a, "update", new Object[] {}, new Class[] {},
-							new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
+	/**
+	 * @see IAuction#getMyListings()
+	 */
+	public ArrayList<ListingSummary> getMyListings(SessionToken session, int page, int pageSize) throws RemoteException {
+		return this.admit("getMyListings", session, null, null, () -> {
+			return this.replicatedCall("getMyListings", "listingsBySellerReq",
+					new Object[] { session.getClientId(), page, Math.max(1, Math.min(pageSize, this.MAX_PAGE)) },
+					new Class[] { int.class, int.class, int.class }, null);
+		});
+	}
+
+	/**
+	 * @see IAuction#getMyBids()
+	 */
+	public ArrayList<ListingSummary> getMyBids(SessionToken session, int page, int pageSize) throws RemoteException {
+		return this.admit("getMyBids", session, null, null, () -> {
+			return this.replicatedCall("getMyBids", "listingsByBidderReq",
+					new Object[] { session.getClientId(), page, Math.max(1, Math.min(pageSize, this.MAX_PAGE)) },
+					new Class[] { int.class, int.class, int.class }, null);
+		});
+	}
+
+	/**
+	 * Reads events from a single Backend rather than voting, as consumers only
+	 * need an ordered stream and every Backend numbers events the same way.
+	 * @see IAuction#getEvents()
+	 */
+	public ArrayList<StreamEvent> getEvents(SessionToken session, long fromSeq, int max) throws RemoteException {
+		return this.admit("getEvents", session, null, null, () -> {
+			return this.readFirst("getEvents", "readEventsReq", new Object[] { fromSeq, Math.min(max, this.MAX_EVENTS) },
+					new Class[] { long.class, int.class });
+		});
+	}
+
+	/**
+	 * Archived auctions are only held by the Backends that archived them, so a
+	 * Backend that joined since has none. Backends are asked in turn.
+	 * @see IAuction#getArchivedAuction()
+	 */
+	public ArchivedAuction getArchivedAuction(int auctionId) throws RemoteException {
+		return this.admit("getArchivedAuction", null, () -> this.readFirst("getArchivedAuction",
+				"getArchivedReq", new Object[] { auctionId }, new Class[] { int.class }));
+	}
+
+	/**
+	 * Reads from one Backend at a time rather than voting, for data Backends may
+	 * hold different amounts of. The oldest Backend has usually been running the
+	 * longest, so it is asked first, and later ones only if it fails or has no
+	 * answer. Reads are out of band and run on the Backends query pool, so they
+	 * don't queue behind or hold up bids.
+	 * @param op     the name of the IAuction operation, used for metrics
+	 * @param method the name of the Backend method to call
+	 * @param args   the arguments to the Backend method
+	 * @param types  the types of the arguments
+	 * @return the first result that isn't null, or null if no Backend had one
+	 */
+	private <T> T readFirst(String op, String method, Object[] args, Class[] types) {
+		long start = System.nanoTime();
+		RequestOptions opts = new RequestOptions(ResponseMode.GET_FIRST, this.DISPATCHER_TIMEOUT);
+		opts.setFlags(Message.Flag.OOB);
+		try {
+			for (Address backend : this.membership.getBackends()) {
+				try {
+					T result = this.dispatcher.callRemoteMethod(backend, method, args, types, opts);
+					if (result != null)
+						return result;
+				} catch (Exception e) {
+					this.metrics.increment(op + ".errors");
 				}
 			}
-			return majority;
-		} catch (Exception e) {
-			e.printStackTrace();
+			return null;
+		} finally {
+			this.metrics.recordSince(op + ".rmi", start);
 		}
-		return "Error";
 	}
 
 	/**
-	 * @see IAuction#browseAuctions()
+	 * @see IAuction#register()
+	 */
+	public String register(UserAccount user) throws RemoteException {
+		return this.admit("register", OVERLOADED, () -> this.replicatedCall("register", "registerReq",
+				new Object[] { user }, new Class[] { UserAccount.class }, "Error"));
+	}
+
+	/**
+	 * @see IAuction#getChallenge()
+	 */
+	public String getChallenge(String username) throws RemoteException {
+		// Generate random 10 digit string challenge
+		String challenge = getRandomAlphaNumString(10);
+		return this.admit("getChallenge", null, () -> this.replicatedCall("getChallenge", "getChallengeReq",
+				new Object[] { username, challenge }, new Class[] { String.class, String.class }, null));
+	}
+
+	/**
+	 * Returns a random string of size n constructed of upper and lower case letters
+	 * and numbers.
+	 * 
+	 * @param n the length of the string to be returned
+	 * @return the random alphanumeric string
+	 */
+	private String getRandomAlphaNumString(int n) {
+		String AlphaNumericString = "ABCDEFGHIJKLMNOPQRSTUVWXYZ" + "0123456789" + "abcdefghijklmnopqrstuvxyz";
+		StringBuilder sb = new StringBuilder(n);
+		for (int i = 0; i < n; i++) {
+			int index = (int) (AlphaNumericString.length() * Math.random());
+			sb.append(AlphaNumericString.charAt(index));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @see IAuction#validateChallenge()
+	 */
+	public SessionToken validateChallenge(byte[] encodedChallenge, String username) throws RemoteException {
+		return this.admit("validateChallenge", null, () -> {
+			UserAccount user = this.replicatedCall("validateChallenge", "validateChallengeReq",
+					new Object[] { encodedChallenge, username }, new Class[] { byte[].class, String.class }, null);
+			return user == null ? null : this.sessions.issue(user);
+		});
+	}
+
+	/**
+	 * Runs a call from a client that takes no session if admission control lets
+	 * it through, see {@link #admit(String, String, Object, Supplier)}.
+	 * @param op       the name of the IAuction operation
+	 * @param rejected the value returned if the call is turned away
+	 * @param call     the call
+	 * @return the result of the call, or the rejected value
+	 */
+	private <T> T admit(String op, T rejected, Supplier<T> call) {
+		return this.admit(op, (String) null, rejected, call);
+	}
+
+	/**
+	 * Runs a call from a client with a session if admission control lets it
+	 * through. The session is verified once here, so the call runs only with a
+	 * verified session and doesn't verify it again.
+	 * @param op       the name of the IAuction operation
+	 * @param session  the session token sent by the client
+	 * @param rejected the value returned if the call is turned away
+	 * @param invalid  the value returned if the session is invalid or expired
+	 * @param call     the call
+	 * @return the result of the call, the rejected value or the invalid value
+	 */
+	private <T> T admit(String op, SessionToken session, T rejected, T invalid, Supplier<T> call) {
+		// Only trust the username once the token is verified, so a forged token can't use up someone elses rate
+		if (!this.verify(session))
+			return this.admit(op, (String) null, rejected, () -> invalid);
+		return this.admit(op, session.getUsername(), rejected, call);
+	}
+
+	/**
+	 * Runs a call from a client if admission control lets it through. Calls from
+	 * a logged in user are rate limited per user, and other calls per client host.
+	 * Calls made in process rather than over RMI, such as by the test harnesses,
+	 * are always run.
+	 * @param op       the name of the IAuction operation
+	 * @param username the username of the verified session, or null if there is none
+	 * @param rejected the value returned if the call is turned away
+	 * @param call     the call
+	 * @return the result of the call, or the rejected value
 	 */
-	public ArrayList<AuctionItem> browseAuctions() throws RemoteException {
+	private <T> T admit(String op, String username, T rejected, Supplier<T> call) {
+		String caller;
 		try {
-			RspList<ArrayList<AuctionItem>> responses = this.dispatcher.callRemoteMethods(null, "browseAuctionsReq",
-					new Object[] {}, new Class[] {}, new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
+			caller = "host:" + RemoteServer.getClientHost();
+		} catch (ServerNotActiveException e) {
+			return call.get();
+		}
+		if (username != null)
+			caller = "user:" + username;
+		if (!this.admission.tryAcquire(op, caller))
+			return rejected;
+		try {
+			return call.get();
+		} finally {
+			this.admission.release();
+		}
+	}
 
-			// If responses are all equal then return first response
-			if (allEqual(responses))
-				return responses.getResults().get(0);
+	/**
+	 * Returns whether a session token is valid, counting rejected tokens.
+	 * @param session the session token sent by the client
+	 * @return true if the token was issued by a Frontend and hasn't expired
+	 */
+	private boolean verify(SessionToken session) {
+		if (this.sessions.verify(session))
+			return true;
+		this.metrics.increment("session.rejected");
+		return false;
+	}
 
-			// Otherwise take majority response and update erroneous replica
-			ArrayList<AuctionItem> majority = (ArrayList<AuctionItem>) findMajority(responses.getResults());
-			List<Address> dests = new ArrayList<Address>(groupChannel.getView().getMembers());
-			// Remove this member
-			dests.remove(groupChannel.getAddress());
-
-			// Check all address responses if it doesn't match the majority response then update			
-			for (Address a : dests) {
-				if (!(responses.getValue(a).equals(majority))) {
-					// Update A
-					this.dispatcher.callRemoteMethod(a, "update", new Object[] {}, new Class[] {},
-							new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
-				}
-			}
-			return majority;
+	/**
+	 * @see IAuction#subscribe()
+	 */
+	public boolean subscribe(SessionToken session, int auctionId, IAuctionListener listener) throws RemoteException {
+		// The username is taken from the verified session, so no one can be sent another users outbid events
+		return this.admit("subscribe", session, false, false, () -> {
+			this.notifications.subscribe(auctionId, session.getUsername(), listener);
+			return true;
+		});
+	}
+
+	/**
+	 * @see IAuction#unsubscribe()
+	 */
+	public void unsubscribe(int auctionId, IAuctionListener listener) throws RemoteException {
+		this.admit("unsubscribe", null, () -> {
+			this.notifications.unsubscribe(auctionId, listener);
+			return null;
+		});
+	}
+
+	/**
+	 * Called by the leader Backend when a listing has changed so it is re-fetched
+	 * on the next browse.
+	 * @param auctionId the auction ID of the changed listing, or -1 if any listing may have changed
+	 */
+	public void listingChanged(int auctionId) {
+		this.metrics.increment("listingCache.invalidations");
+		this.listingCache.invalidate(auctionId);
+	}
+
+	/**
+	 * Called by another Frontend when a bid it handled was accepted so subscribers
+	 * of this Frontend can be notified.
+	 * @param auctionId the auction ID of the auction bid on
+	 * @param bid       the accepted bid
+	 */
+	public void bidAccepted(int auctionId, Bid bid) {
+		this.notifications.bidAccepted(auctionId, bid);
+	}
+
+	/**
+	 * Called by the leader Backend when a timed auction has ended, or by another
+	 * Frontend when it closed an auction, so subscribers can be notified.
+	 * @param auctionId the auction ID of the ended auction
+	 * @param result    the winner or reserve not met message
+	 */
+	public void auctionEnded(int auctionId, String result) {
+		this.notifications.auctionClosed(auctionId, result);
+	}
+
+	/**
+	 * Asynchronously calls a method on every other Frontend.
+	 * @param method the name of the Frontend method to call
+	 * @param args   the arguments to the method
+	 * @param types  the types of the arguments
+	 */
+	private void notifyPeers(String method, Object[] args, Class[] types) {
+		List<Address> peers = GroupUtils.getFrontends(this.groupChannel.getView());
+		peers.remove(this.groupChannel.getAddress());
+		if (peers.isEmpty())
+			return;
+		try {
+			// Sent to each peer directly, as a multicast would reach every Backend too
+			this.dispatcher.callRemoteMethods(peers, method, args, types,
+					new RequestOptions(ResponseMode.GET_NONE, 0).setAnycasting(true));
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		return null;
 	}
 
 	/**
-	 * @see IAuction#register()
+	 * Calls a method on all Backends and returns the majority response. Any Backend
+	 * whose response differs from the majority has its state updated, as long as a
+	 * quorum of the live Backends agreed on the majority response.
+	 * @param op         the name of the IAuction operation, used for metrics
+	 * @param method     the name of the Backend method to call
+	 * @param args       the arguments to the Backend method
+	 * @param types      the types of the arguments
+	 * @param errorValue the value returned if the call fails
+	 * @return the majority response
 	 */
-	public String register(UserAccount user) throws RemoteException {
+	private <T> T replicatedCall(String op, String method, Object[] args, Class[] types, T errorValue) {
+		long start = System.nanoTime();
+		this.membership.callStarted();
 		try {
-			RspList<String> responses = this.dispatcher.callRemoteMethods(null, "registerReq", new Object[] { user },
-					new Class[] { UserAccount.class },
-					new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
+			RspList<T> responses = this.fanOut(op, method, args, types);
+			if (responses.getResults().isEmpty())
+				return errorValue;
 
 			// If responses are all equal then return first response
-			if (allEqual(responses))
+			long voteStart = System.nanoTime();
+			if (Voting.allEqual(responses.getResults())) {
+				this.metrics.recordSince(op + ".vote", voteStart);
 				return responses.getResults().get(0);
+			}
 
 			// Otherwise take majority response and update erroneous replica
-			String majority = (String) findMajority(responses.getResults());
-			List<Address> dests = new ArrayList<Address>(groupChannel.getView().getMembers());
-			// Remove this member
-			dests.remove(groupChannel.getAddress());
-
-			// Check all address responses if it doesn't match the majority response then update			
-			for (Address a : dests) {
-				if (!(responses.getValue(a).equals(majority))) {
-					// Update A
-					this.dispatcher.callRemoteMethod(a, "update", new Object[] {}, new Class[] {},
-							new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
-				}
+			T majority = Voting.findMajority(responses.getResults());
+			this.metrics.recordSince(op + ".vote", voteStart);
+			this.metrics.increment(op + ".divergence");
+
+			// An out of band read can overtake a write still being applied, so a mismatch isn't proof of divergence
+			if (this.isOutOfBand(method))
+				return majority;
+
+			// Without a quorum there is no telling which replicas are the correct ones
+			if (Collections.frequency(responses.getResults(), majority) < this.membership.getQuorum()) {
+				this.metrics.increment(op + ".noQuorum");
+				return majority;
 			}
+
+			long repairStart = System.nanoTime();
+			this.repair(responses, majority);
+			this.metrics.recordSince(op + ".repair", repairStart);
 			return majority;
 		} catch (Exception e) {
+			this.metrics.increment(op + ".errors");
 			e.printStackTrace();
+		} finally {
+			this.membership.callEnded();
+			this.metrics.recordSince(op + ".rmi", start);
 		}
-		return "Error";
+		return errorValue;
 	}
 
 	/**
-	 * @see IAuction#getChallenge()
+	 * Sends a method call to all Backends and waits for the responses of every replica
+	 * that isn't a slow follower. Records the overall fan-out time and the response
+	 * time of each replica.
+	 * @param op     the name of the IAuction operation, used for metrics
+	 * @param method the name of the Backend method to call
+	 * @param args   the arguments to the Backend method
+	 * @param types  the types of the arguments
+	 * @return the responses of all Backends
 	 */
-	public String getChallenge(String username) throws RemoteException {
-		try {
-			RspList<String> responses = this.dispatcher.callRemoteMethods(null, "getChallengeReq",
-					new Object[] { username }, new Class[] { String.class },
-					new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
+	private <T> RspList<T> fanOut(String op, String method, Object[] args, Class[] types) throws Exception {
+		// Only wait on replicas that aren't followers
+		List<Address> backends = this.membership.getBackends();
+		final Set<Address> pending = ConcurrentHashMap.newKeySet();
+		pending.addAll(backends);
+		pending.removeAll(this.replicas.getFollowers());
+
+		final long sent = System.nanoTime();
+		final boolean oob = this.isOutOfBand(method);
+		// A multicast to the Backends reaches every member, so the other Frontends are excluded
+		RequestOptions opts = new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT)
+				.setExclusionList(this.otherFrontends());
+		if (oob)
+			opts.setFlags(Message.Flag.OOB);
+		opts.setRspFilter(new RspFilter() {
+			public boolean isAcceptable(Object response, Address sender) {
+				if (!GroupUtils.isBackend(sender))
+					return false;
+				long elapsed = System.nanoTime() - sent;
+				metrics.recordLatency("replica." + sender + ".response", elapsed);
+				// Out of band responses skip the queue, so they say nothing about how far behind a replica is
+				if (!oob)
+					replicas.record(sender, elapsed);
+				pending.remove(sender);
+				return true;
+			}
 
-			if (responses.getResults().isEmpty())
-				return null;
-
-			String challenge = responses.getResults().get(0);
-			List<Address> dests = new ArrayList<Address>(groupChannel.getView().getMembers());
-			dests.remove(groupChannel.getAddress());
-			Address stateToKeep = null;
-			for (Address a : dests) {
-				if (responses.getValue(a).equals(challenge)) {
-					stateToKeep = a;
-					break;
-				}
+			public boolean needMoreResponses() {
+				return !pending.isEmpty();
 			}
+		});
 
-			// Get state from state to keep
-			Hashtable<Integer, String> state = this.dispatcher.callRemoteMethod(stateToKeep, "getChallengeState",
-					new Object[] {}, new Class[] {}, new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
+		RspList<T> responses = this.dispatcher.callRemoteMethods(backends, method, args, types, opts);
+		this.metrics.recordSince(op + ".fanout", sent);
 
-			// Update states in all other replicas
-			dests.remove(stateToKeep);
-			for (Address a : dests) {
-				this.dispatcher.callRemoteMethod(a, "updateChallengeState", new Object[] { state },
-						new Class[] { Hashtable.class },
-						new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
+		// Penalise replicas that were waited on but never responded
+		for (Address a : pending) {
+			this.metrics.increment("replica." + a + ".timeouts");
+			this.replicas.record(a, System.nanoTime() - sent);
+		}
+		return responses;
+	}
+
+	/**
+	 * Resyncs the replicas whose response differs from the majority, from one that agrees with it.
+	 * @param responses the responses of the replicas
+	 * @param majority  the majority response
+	 */
+	private <T> void repair(RspList<T> responses, T majority) {
+		Address donor = null;
+		ArrayList<Address> diverged = new ArrayList<>();
+		for (Rsp<T> rsp : responses) {
+			if (!rsp.wasReceived())
+				continue;
+			if (Objects.equals(rsp.getValue(), majority)) {
+				if (donor == null)
+					donor = rsp.getSender();
+			} else {
+				this.metrics.increment("replica." + rsp.getSender() + ".repairs");
+				diverged.add(rsp.getSender());
 			}
+		}
+		this.resync(donor, diverged);
+	}
 
-			return challenge;
+	/**
+	 * Asks the Backends to copy a donors state to diverged replicas. The request is
+	 * sequenced like any write, so the copy is taken and installed at the same point
+	 * in the command stream. The Frontend doesn't wait for the copy to complete.
+	 * @param donor   a Backend with the correct state
+	 * @param targets the Backends to resync
+	 */
+	private void resync(Address donor, ArrayList<Address> targets) {
+		if (donor == null || targets.isEmpty())
+			return;
+		this.metrics.increment("resync.requests");
+		try {
+			// The multicast reaches every member, other Frontends are told to ignore it
+			View view = this.groupChannel.getView();
+			RequestOptions opts = new RequestOptions(ResponseMode.GET_NONE, 0)
+					.setExclusionList(GroupUtils.getFrontends(view).toArray(new Address[0]));
+			this.dispatcher.callRemoteMethods(GroupUtils.getBackends(view), "resyncReq",
+					new Object[] { ThreadLocalRandom.current().nextLong(), donor, targets },
+					new Class[] { long.class, Address.class, ArrayList.class }, opts);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		return null;
 	}
 
 	/**
-	 * @see IAuction#validateChallenge()
+	 * Returns whether calls to a Backend method are sent out of band.
+	 * @param method the name of the Backend method
+	 * @return true if the method is read-only and out of band reads are enabled
 	 */
-	public UserAccount validateChallenge(byte[] encodedChallenge, String username) throws RemoteException {
-		try {
-			RspList<UserAccount> responses = this.dispatcher.callRemoteMethods(null, "validateChallengeReq",
-					new Object[] { encodedChallenge, username }, new Class[] { byte[].class, String.class },
-					new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
+	private boolean isOutOfBand(String method) {
+		return this.readsOutOfBand && READ_ONLY.contains(method);
+	}
 
-			// If responses are all equal then return first response
-			if (allEqual(responses))
-				return responses.getResults().get(0);
+	/**
+	 * Returns the other Frontends in the group, to exclude from multicasts meant for the Backends.
+	 * @return the addresses of the other Frontends
+	 */
+	private Address[] otherFrontends() {
+		List<Address> frontends = GroupUtils.getFrontends(this.groupChannel.getView());
+		frontends.remove(this.groupChannel.getAddress());
+		return frontends.toArray(new Address[0]);
+	}
 
-			// Otherwise take majority response and update erroneous replica
-			UserAccount majority = (UserAccount) findMajority(responses.getResults());
-			List<Address> dests = new ArrayList<Address>(groupChannel.getView().getMembers());
-			// Remove this member
-			dests.remove(groupChannel.getAddress());
-
-			// Check all address responses if it doesn't match the majority response then
-			// update
-			for (Address a : dests) {
-				if (!(responses.getValue(a).equals(majority))) {
-					// Update A
-					this.dispatcher.callRemoteMethod(a, "update", new Object[] {}, new Class[] {},
-							new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
-				}
-			}
-			return majority;
+	/**
+	 * Compares a hash of every Backends state, taken at the same point in the command
+	 * stream, and resyncs any that differ from the majority. This catches divergence
+	 * that never shows in a response, such as a write missed by a follower that isn't
+	 * waited on. Only the oldest Frontend checks, so replicas aren't resynced twice.
+	 */
+	private void checkReplicas() {
+		List<Address> backends = this.membership.getBackends();
+		if (!this.membership.isCoordinator(this.groupChannel.getAddress()) || backends.size() < 2)
+			return;
+		try {
+			// Wait for every replica, followers included, as a slow replica still answers from the same point
+			RspList<Integer> hashes = this.dispatcher.callRemoteMethods(backends, "stateHashReq", new Object[] {},
+					new Class[] {}, new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT)
+							.setExclusionList(this.otherFrontends()));
+			if (Voting.allEqual(hashes.getResults()))
+				return;
+			this.metrics.increment("checkReplicas.divergence");
+			this.repair(hashes, Voting.findMajority(hashes.getResults()));
 		} catch (Exception e) {
-			e.printStackTrace();
+			this.metrics.increment("checkReplicas.errors");
+		}
+	}
+
+	/**
+	 * Pings every follower to measure whether it has caught up with the group. The ping
+	 * is delivered in order behind all outstanding requests so its response time
+	 * reflects the followers backlog.
+	 */
+	private void probeFollowers() {
+		for (Address a : this.replicas.getFollowers()) {
+			long start = System.nanoTime();
+			try {
+				this.dispatcher.callRemoteMethod(a, "pingReq", new Object[] {}, new Class[] {},
+						new RequestOptions(ResponseMode.GET_ALL, this.DISPATCHER_TIMEOUT));
+			} catch (Exception e) {
+				this.metrics.increment("replica." + a + ".timeouts");
+			}
+			this.replicas.record(a, System.nanoTime() - start);
 		}
-		return null;
 	}
 
 	/**
@@ -314,69 +774,31 @@ public class Frontend implements MembershipListener, IAuction {
 			System.exit(1);
 		}
 	}
-
-	/**
-	 * A helper function to return whether elements in a list are identical.
-	 * @param list the list of values to compare
-	 * @return all values are identical
-	 */
-	private boolean allEqual(RspList list) {
-		List results = list.getResults();
-		//If list is only one item return true
-		if (results.size() == 1)
-			return true;
-
-		//Otherwise loop through all combinations of items are compare
-		for (int i = 0; i < results.size(); i++) {
-			for (int j = 0; j < results.size(); j++) {
-				if (!results.get(i).equals(results.get(j))) {
-					return false;
-				}
-			}
-		}
-		return true;
-	}
-
-	/**
-	 * A helper function to find the majority element in a list. 
-	 * @param list the list of elements
-	 * @return the majority element
-	 */
-	private <T> Object findMajority(List<T> list) {
-		//Obtain distinct elements
-		Stream<T> dList = list.stream().distinct();
-		Object[] dListObj = dList.toArray();
-		
-		//Create corresponding counts list
-		int[] counts = new int[dListObj.length];
-		for (int i = 0; i < counts.length; i++) 
-			counts[i] = 0;
-		
-
-		//Count number of times distinct element appears in list
-		for (int i = 0; i < dListObj.length; i++) {
-			for (int j = 0; j < list.size(); j++) {
-				if (dListObj[i].equals(list.get(j))) 
-					counts[i]++;				
-			}
-		}
-
-		//Return the element that appears the most
-		int modeIndex = 0;
-		for (int i = 0; i < counts.length; i++) {
-			if (counts[i] > counts[modeIndex])
-				modeIndex = i;
-		}
-
-		return dListObj[modeIndex];
-	}
 	
 	public void viewAccepted(View newView) {
 		System.out.printf("jgroups view changed\n    new view: %s\n", newView.toString());
+		this.membership.viewAccepted(newView);
+
+		// After a partition heals, Backends from the smaller side missed the writes made
+		// on the larger side. Client traffic alone may not reveal this, so the oldest
+		// Frontend resyncs them
+		if (newView instanceof MergeView) {
+			if (!this.membership.isCoordinator(this.groupChannel.getAddress()))
+				return;
+			View majority = GroupUtils.getMajoritySubgroup((MergeView) newView);
+			List<Address> donors = GroupUtils.getBackends(majority);
+			ArrayList<Address> stale = new ArrayList<>(GroupUtils.getBackends(newView));
+			stale.removeAll(donors);
+			if (!donors.isEmpty()) {
+				this.metrics.increment("merge.resyncs");
+				this.scheduler.execute(() -> this.resync(donors.get(0), stale));
+			}
+		}
 	}
 
 	public void suspect(Address suspectedMember) {
 		System.out.printf("jgroups view suspected member crash: %s\n", suspectedMember.toString());
+		this.membership.suspect(suspectedMember);
 	}
 
 	public void block() {
@@ -389,11 +811,11 @@ public class Frontend implements MembershipListener, IAuction {
 
 	/**
 	 * Main method. Instantiates a Frontend.
-	 * @param args N/A
+	 * @param args the optional name to bind this Frontend to, which must start with "myserver"
 	 */
 	public static void main(String args[]) {
 		try {
-			new Frontend();
+			new Frontend(args.length > 0 ? args[0] : SERVER_NAME);
 		} catch (RemoteException e) {
 			System.err.println("remote exception:");
 			e.printStackTrace();
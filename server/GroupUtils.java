@@ -1,27 +1,128 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.jgroups.Address;
 import org.jgroups.JChannel;
+import org.jgroups.MergeView;
+import org.jgroups.View;
+import org.jgroups.protocols.SEQUENCER;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.stack.ProtocolStack;
 
 public class GroupUtils {
 
+	public static final String BACKEND = "backend";
+	public static final String FRONTEND = "frontend";
+
+	/** The protocol stack to use, "udp", "tcp", "default" or the path of a JGroups XML file. */
+	private static final String STACK = System.getProperty("group.stack", "udp");
+
 	/**
 	 * Returns a JGroup Channel in which a connection has already been established.
 	 * The channel name is taken from the "GROUP" env var, or a default is used if
 	 * no var present. note: this channel will discard self messages.
-	 * 
+	 *
+	 * The protocol stack is chosen with the "group.stack" system property: "udp"
+	 * (the default) and "tcp" select the shipped auction-udp.xml and auction-tcp.xml,
+	 * "default" the JGroups default stack, and anything else is loaded as a file.
+	 *
+	 * @param role the role of this member (BACKEND/FRONTEND), used to prefix its name
 	 * @return the connected jgroups channel or null if an error occurred.
 	 */
-	public static JChannel connect() {
+	public static JChannel connect(String role) {
 		String channelName = System.getenv("GROUP") == null ? "DEFAULT_GROUP" : System.getenv("GROUP");
 		try {
-			JChannel channel = new JChannel();
+			JChannel channel = createChannel(STACK);
+			// Totally order multicasts so every Backend applies requests from concurrent Frontends in the same order
+			if (channel.getProtocolStack().findProtocol(SEQUENCER.class) == null)
+				channel.getProtocolStack().insertProtocol(new SEQUENCER(), ProtocolStack.ABOVE, GMS.class);
+			channel.setName(role + "-" + ThreadLocalRandom.current().nextInt(100000));
 			channel.connect(channelName);
 			System.out.printf("✅    connected to jgroups channel: %s\n", channelName);
 			channel.setDiscardOwnMessages(true);
 			return channel;
 		} catch (Exception e) {
-			System.err.printf("🆘    could not connect to jgroups channel: %s\n", channelName);
+			System.err.printf("🆘    could not connect to jgroups channel: %s (%s)\n", channelName, e.getMessage());
 		}
 
 		return null;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Returns an unconnected channel with a protocol stack.
+	 *
+	 * @param stack "udp", "tcp", "default" or the path of a JGroups XML file
+	 * @return the channel
+	 * @throws Exception if the stack could not be loaded
+	 */
+	public static JChannel createChannel(String stack) throws Exception {
+		switch (stack) {
+		case "default":
+			return new JChannel();
+		case "udp":
+		case "tcp":
+			return new JChannel("auction-" + stack + ".xml");
+		default:
+			return new JChannel(stack);
+		}
+	}
+
+	/**
+	 * Returns whether a member of the group is a Backend.
+	 *
+	 * @param member the address of the member
+	 * @return true if the member is a Backend
+	 */
+	public static boolean isBackend(Address member) {
+		return member.toString().startsWith(BACKEND + "-");
+	}
+
+	/**
+	 * Returns the Backends in a view, oldest first.
+	 *
+	 * @param view the view of the group
+	 * @return the addresses of all Backends in the view
+	 */
+	public static List<Address> getBackends(View view) {
+		List<Address> backends = new ArrayList<>();
+		for (Address a : view.getMembers()) {
+			if (isBackend(a))
+				backends.add(a);
+		}
+		return backends;
+	}
+
+	/**
+	 * Returns the subgroup of a merge that held the most Backends, which is taken to
+	 * hold the correct state. Ties go to the first subgroup, so every member of the
+	 * merged group picks the same one.
+	 *
+	 * @param view the merged view
+	 * @return the majority subgroup
+	 */
+	public static View getMajoritySubgroup(MergeView view) {
+		View majority = null;
+		for (View subgroup : view.getSubgroups()) {
+			if (majority == null || getBackends(subgroup).size() > getBackends(majority).size())
+				majority = subgroup;
+		}
+		return majority;
+	}
+
+	/**
+	 * Returns the Frontends in a view, oldest first.
+	 *
+	 * @param view the view of the group
+	 * @return the addresses of all Frontends in the view
+	 */
+	public static List<Address> getFrontends(View view) {
+		List<Address> frontends = new ArrayList<>();
+		for (Address a : view.getMembers()) {
+			if (a.toString().startsWith(FRONTEND + "-"))
+				frontends.add(a);
+		}
+		return frontends;
+	}
+
+}
@@ -0,0 +1,167 @@
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.blocks.RequestOptions;
+import org.jgroups.blocks.ResponseMode;
+import org.jgroups.blocks.RpcDispatcher;
+
+/**
+ * Checks that bids and the reads a Frontend sends out of band don't hold each
+ * other up. Starts a Backend in this process, lists a large number of items, then
+ * measures bid latency while searches are sent continuously, and search latency
+ * while bids are queued, with searches sent both in order and out of band as the
+ * Frontend sends them. The ordered rows are printed for comparison. Exits with
+ * status 1 if the p99 of either out of band measurement is above its bound, read
+ * from "hol.maxBidP99Ms" and "hol.maxSearchP99Ms".
+ *
+ * Usage: java -cp jgroups-3.6.20.Final.jar:. HeadOfLineDemo [listings]
+ * Run with no other cluster on the same GROUP.
+ * @author Thomas Watkins
+ */
+public class HeadOfLineDemo {
+
+	private static final int SAMPLES = 200;
+	private static final int BACKLOG = 200;
+	private static final double MAX_BID_P99 = Double.parseDouble(System.getProperty("hol.maxBidP99Ms", "50"));
+	private static final double MAX_SEARCH_P99 = Double.parseDouble(System.getProperty("hol.maxSearchP99Ms", "250"));
+	// Matches every listing, so each search scans the whole listing trie
+	private static final ListingQuery SEARCH = new ListingQuery("item", false, ListingQuery.Sort.HIGHEST_BID);
+
+	/**
+	 * Receives the notifications the Backend sends to Frontends.
+	 */
+	public static class Sink {
+		public void listingChanged(int auctionId) {
+		}
+
+		public void auctionEnded(int auctionId, String message) {
+		}
+	}
+
+	/**
+	 * Main method. Runs the demo and checks the out of band bounds.
+	 * @param args the optional number of listings
+	 */
+	public static void main(String[] args) throws Exception {
+		int listings = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+		new Backend();
+		JChannel channel = GroupUtils.connect(GroupUtils.FRONTEND);
+		RpcDispatcher dispatcher = new RpcDispatcher(channel, new Sink());
+		List<Address> backends = GroupUtils.getBackends(channel.getView());
+
+		// The seed users tom and max are registered with client IDs 1 and 3
+		UserAccount buyer = new UserAccount("max", null, Role.of(Role.BUYER));
+		buyer.setClientId(3);
+		for (int i = 0; i < listings; i++) {
+			AuctionItem item = new AuctionItem(null, "item " + i, "a long description of item " + i, true, 100, 500);
+			dispatcher.callRemoteMethods(backends, "createAuctionReq", new Object[] { 1, item },
+					new Class[] { int.class, AuctionItem.class }, sync());
+		}
+		System.out.printf("%d listings\n", listings);
+		System.out.printf("%-36s %10s %10s %10s\n", "", "p50 (ms)", "p99 (ms)", "max (ms)");
+
+		boolean failed = false;
+		long[] amount = { 1000 };
+		for (boolean oob : new boolean[] { false, true }) {
+			String mode = oob ? "out of band" : "ordered";
+
+			// Bid latency while searches are sent continuously
+			AtomicBoolean stop = new AtomicBoolean();
+			Thread reader = new Thread(() -> {
+				while (!stop.get()) {
+					try {
+						search(dispatcher, backends, oob);
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			});
+			reader.start();
+			LatencyHistogram bids = new LatencyHistogram();
+			for (int i = 0; i < SAMPLES; i++) {
+				long start = System.nanoTime();
+				dispatcher.callRemoteMethods(backends, "bidOnItemReq", new Object[] { 1, new Bid(buyer, amount[0] += 100) },
+						new Class[] { int.class, Bid.class }, sync());
+				bids.record(System.nanoTime() - start);
+			}
+			stop.set(true);
+			reader.join();
+			print("bid, searches " + mode, bids);
+			failed |= oob && !withinBound(bids, MAX_BID_P99);
+
+			// Search latency while a backlog of bids is queued
+			stop.set(false);
+			Semaphore inFlight = new Semaphore(BACKLOG);
+			Thread writer = new Thread(() -> {
+				while (!stop.get()) {
+					try {
+						inFlight.acquire();
+						dispatcher.callRemoteMethodsWithFuture(backends,
+								new MethodCall("bidOnItemReq", new Object[] { 2, new Bid(buyer, amount[0] += 100) },
+										new Class[] { int.class, Bid.class }),
+								sync(), f -> inFlight.release());
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			});
+			writer.start();
+			LatencyHistogram searches = new LatencyHistogram();
+			for (int i = 0; i < SAMPLES / 10; i++) {
+				long start = System.nanoTime();
+				search(dispatcher, backends, oob);
+				searches.record(System.nanoTime() - start);
+			}
+			stop.set(true);
+			writer.join();
+			print("search " + mode + ", bids queued", searches);
+			failed |= oob && !withinBound(searches, MAX_SEARCH_P99);
+
+			// Let queued bids drain before the next mode
+			dispatcher.callRemoteMethods(backends, "pingReq", new Object[] {}, new Class[] {}, sync());
+		}
+		System.exit(failed ? 1 : 0);
+	}
+
+	private static RequestOptions sync() {
+		return new RequestOptions(ResponseMode.GET_ALL, 60000);
+	}
+
+	/**
+	 * Sends a search to the Backends, out of band as the Frontend sends it or in order.
+	 * @param dispatcher the dispatcher to send with
+	 * @param backends   the Backends
+	 * @param oob        whether to send the search out of band
+	 */
+	private static void search(RpcDispatcher dispatcher, List<Address> backends, boolean oob) throws Exception {
+		RequestOptions opts = sync();
+		if (oob)
+			opts.setFlags(Message.Flag.OOB);
+		dispatcher.callRemoteMethods(backends, "searchAuctionsReq", new Object[] { SEARCH },
+				new Class[] { ListingQuery.class }, opts);
+	}
+
+	/**
+	 * Returns whether the p99 of a measurement is within its bound, printing it if not.
+	 * @param h     the measurement
+	 * @param bound the bound in milliseconds
+	 * @return true if the p99 is within the bound
+	 */
+	private static boolean withinBound(LatencyHistogram h, double bound) {
+		if (h.getPercentileMillis(99) <= bound)
+			return true;
+		System.out.printf("p99 above the bound of %.2f ms\n", bound);
+		return false;
+	}
+
+	private static void print(String name, LatencyHistogram h) {
+		System.out.printf("%-36s %10.2f %10.2f %10.2f\n", name, h.getPercentileMillis(50), h.getPercentileMillis(99),
+				h.getMaxMillis());
+	}
+}
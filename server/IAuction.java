@@ -6,40 +6,112 @@ import java.util.ArrayList;
  * Provides methods to view, create and close auctions. As well
  * as bidding on auctions. Also provides methods for registering 
  * and authentication. 
+ * 
+ * A server may turn a call away when the caller is over its rate
+ * limit or the server is overloaded. Calls returning a string then
+ * return a busy message, createAuction returns -1, and the rest
+ * return null.
  * @author Thomas Watkins
  *
  */
 public interface IAuction extends Remote {
 	
 	/**
-	 * Creates a new auction for an item.
-	 * @param item the item to be put up for auction
-	 * @return     the auction ID for this auction
+	 * Creates a new auction for an item. The owner of the item is the
+	 * authenticated user of the session.
+	 * @param session the session of the seller
+	 * @param item    the item to be put up for auction
+	 * @return        the auction ID for this auction
 	 */
-	public int createAuction(AuctionItem item) throws RemoteException;	
+	public int createAuction(SessionToken session, AuctionItem item) throws RemoteException;	
 	
 	/**
 	 * Closes an auction. This returns a string consisting of
 	 * the winner of the auction, or an error message.
+	 * @param session   the session of the user attempting to close the auction
 	 * @param auctionId the auction ID of the auction to be closed
-	 * @param user      the user attempting to close the auction
 	 * @return     		a string message with the winner of the auction
 	 */
-	public String closeAuction(int auctionId, UserAccount user) throws RemoteException;
+	public String closeAuction(SessionToken session, int auctionId) throws RemoteException;
 	
 	/**
 	 * Enables a buyer to bid on an item. 
+	 * @param session   the session of the buyer
 	 * @param auctionId the auction ID of the auction to be bid on
-	 * @param bid       the bid to be placed
+	 * @param amount    the amount of money to bid in pence
 	 * @return     		a string message with the success of the bid
 	 */
-	public String bidOnItem(int auctionId, Bid bid) throws RemoteException;		
+	public String bidOnItem(SessionToken session, int auctionId, long amount) throws RemoteException;		
+
+	/**
+	 * Enables a buyer to place a hidden maximum bid on an item. The auction bids on
+	 * the buyers behalf, only as high as needed to stay the highest bidder, until
+	 * the maximum is reached.
+	 * @param session   the session of the buyer
+	 * @param auctionId the auction ID of the auction to be bid on
+	 * @param maxAmount the most the buyer is willing to pay in pence
+	 * @return          a string message with the success of the bid
+	 */
+	public String placeMaxBid(SessionToken session, int auctionId, long maxAmount) throws RemoteException;
 	
 	/**
-	 * Returns a list of all auctioned items for display.	 
-	 * @return a list of all auctioned items
+	 * Returns a summary of all auctioned items for display.	 
+	 * @return a summary of each auctioned item
+	 */
+	public ArrayList<ListingSummary> browseAuctions() throws RemoteException;	
+
+	/**
+	 * Returns summaries of the auctioned items matching a query, sorted as the query requests.
+	 * @param query the filter and sort order
+	 * @return      a summary of each matching auctioned item
+	 */
+	public ArrayList<ListingSummary> searchAuctions(ListingQuery query) throws RemoteException;
+
+	/**
+	 * Returns the whole of an auctioned item, including its description and bids.
+	 * @param auctionId the auction ID of the auction
+	 * @return          the auctioned item, or null if it doesn't exist or has been archived
+	 */
+	public AuctionItem getAuction(int auctionId) throws RemoteException;
+
+	/**
+	 * Returns a page of summaries of the authenticated sellers own listings, newest first.
+	 * @param session  the session token of the authenticated seller
+	 * @param page     the page number, starting at 0
+	 * @param pageSize the number of listings on a page, at most 100
+	 * @return         the listings on the page, empty past the last page, or null if the session is invalid
+	 */
+	public ArrayList<ListingSummary> getMyListings(SessionToken session, int page, int pageSize) throws RemoteException;
+
+	/**
+	 * Returns a page of summaries of the listings the authenticated buyer has bid on, newest first.
+	 * @param session  the session token of the authenticated buyer
+	 * @param page     the page number, starting at 0
+	 * @param pageSize the number of listings on a page, at most 100
+	 * @return         the listings on the page, empty past the last page, or null if the session is invalid
+	 */
+	public ArrayList<ListingSummary> getMyBids(SessionToken session, int page, int pageSize) throws RemoteException;
+
+	/**
+	 * Returns the events applied by the Backends from a sequence number onwards,
+	 * for consumers such as analytics and settlement. Every creation, bid and close
+	 * is an event, numbered in the order the Backends applied it. A consumer resumes
+	 * by asking for the sequence number after the last event it read.
+	 * @param session the session token of the authenticated consumer
+	 * @param fromSeq the sequence number of the first event to return
+	 * @param max     the maximum number of events to return
+	 * @return        the events in order, empty if there are none yet, or null if the session is invalid or no Backend could be read
+	 */
+	public ArrayList<StreamEvent> getEvents(SessionToken session, long fromSeq, int max) throws RemoteException;
+
+	/**
+	 * Returns a closed auction that has been moved to the archive. Closed auctions
+	 * are archived a while after they close and are then no longer returned by
+	 * {@link #browseAuctions()} or {@link #searchAuctions(ListingQuery)}.
+	 * @param auctionId the auction ID of the archived auction
+	 * @return          the archived auction, or null if it isn't archived
 	 */
-	public ArrayList<AuctionItem> browseAuctions() throws RemoteException;	
+	public ArchivedAuction getArchivedAuction(int auctionId) throws RemoteException;
 	
 	/**
 	 * Registers a new account ensuring a user with the same username
@@ -57,10 +129,28 @@ public interface IAuction extends Remote {
 	public String getChallenge(String username) throws RemoteException;
 	
 	/**
-	 * Returns a UserAccount if the string challenge is successfully validated, null otherwise.
+	 * Returns a signed session token if the string challenge is successfully validated, null otherwise.
+	 * The token must be sent with every call that changes state.
 	 * @param encodedChallenge the encrypted challenge sent by the client
 	 * @param username         the username of the client requesting authentication
-	 * @return                 the UserAccount of the user sucessfully authenticated
+	 * @return                 the session of the user sucessfully authenticated
+	 */
+	public SessionToken validateChallenge(byte[] encodedChallenge, String username) throws RemoteException;
+	
+	/**
+	 * Subscribes a client to be pushed new highest bid, outbid and closed events
+	 * for an auction. Outbid events are pushed to the user of the session.
+	 * @param session   the session of the subscribing user
+	 * @param auctionId the auction ID of the auction to subscribe to
+	 * @param listener  the callback the events are pushed to
+	 * @return          true if subscribed, false if the session is invalid or the call was turned away
+	 */
+	public boolean subscribe(SessionToken session, int auctionId, IAuctionListener listener) throws RemoteException;
+	
+	/**
+	 * Unsubscribes a client from events for an auction.
+	 * @param auctionId the auction ID of the auction to unsubscribe from
+	 * @param listener  the callback previously subscribed
 	 */
-	public UserAccount validateChallenge(byte[] encodedChallenge, String username) throws RemoteException;
+	public void unsubscribe(int auctionId, IAuctionListener listener) throws RemoteException;
 }
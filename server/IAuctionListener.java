@@ -0,0 +1,17 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * The interface a client implements to be pushed events about auctions it
+ * has subscribed to.
+ * @author Thomas Watkins
+ *
+ */
+public interface IAuctionListener extends Remote {
+
+	/**
+	 * Called when an event occurs on a subscribed auction.
+	 * @param event the event that occurred
+	 */
+	public void onEvent(AuctionEvent event) throws RemoteException;
+}
@@ -0,0 +1,101 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free latency histogram. Samples are placed into power of two buckets
+ * measured in microseconds, so recording a sample is a single atomic increment
+ * and percentiles are accurate to within a factor of two.
+ * @author Thomas Watkins
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong sumNanos;
+	private final AtomicLong maxNanos;
+
+	/**
+	 * Constructor. Creates an empty histogram.
+	 */
+	public LatencyHistogram() {
+		this.buckets = new AtomicLongArray(BUCKETS);
+		this.count = new AtomicLong();
+		this.sumNanos = new AtomicLong();
+		this.maxNanos = new AtomicLong();
+	}
+
+	/**
+	 * Records a single latency sample.
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		long micros = nanos / 1000;
+		int bucket = micros == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		sumNanos.addAndGet(nanos);
+
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+			max = maxNanos.get();
+	}
+
+	/**
+	 * Returns the number of samples recorded.
+	 * @return the number of samples recorded
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the sum of all samples in milliseconds.
+	 * @return the sum of all samples in milliseconds
+	 */
+	public double getSumMillis() {
+		return sumNanos.get() / 1e6;
+	}
+
+	/**
+	 * Returns the largest sample in milliseconds.
+	 * @return the largest sample in milliseconds
+	 */
+	public double getMaxMillis() {
+		return maxNanos.get() / 1e6;
+	}
+
+	/**
+	 * Returns the upper bound of the bucket containing the given percentile.
+	 * @param percentile the percentile to find (0-100)
+	 * @return the percentile latency in milliseconds, 0 if no samples recorded
+	 */
+	public double getPercentileMillis(double percentile) {
+		long total = count.get();
+		if (total == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(total * (percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return Math.min((1L << i) / 1000.0, getMaxMillis());
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * Clears all recorded samples.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		count.set(0);
+		sumNanos.set(0);
+		maxNanos.set(0);
+	}
+}
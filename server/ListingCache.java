@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A Frontend side cache of listing summaries. Writes made through the Frontend
+ * and change notices from the Backends invalidate single listings, which are then
+ * re-fetched on the next browse. Every invalidation bumps a version so a fetch
+ * that raced with a write is never installed.
+ * @author Thomas Watkins
+ */
+public class ListingCache {
+
+	private final TreeMap<Integer, ListingSummary> listings;
+	private final HashSet<Integer> stale;
+	private boolean complete;
+	private long version;
+
+	/**
+	 * Constructor. Creates an empty cache.
+	 */
+	public ListingCache() {
+		this.listings = new TreeMap<>();
+		this.stale = new HashSet<>();
+		this.complete = false;
+		this.version = 0;
+	}
+
+	/**
+	 * Returns all cached listings if the cache is complete and nothing is stale.
+	 * @return the cached listings ordered by auction ID, or null if they must be fetched
+	 */
+	public synchronized ArrayList<ListingSummary> snapshot() {
+		if (!this.complete || !this.stale.isEmpty())
+			return null;
+		return new ArrayList<>(this.listings.values());
+	}
+
+	/**
+	 * Returns the current version of the cache.
+	 * @return the current version
+	 */
+	public synchronized long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Returns the auction IDs of listings that must be re-fetched.
+	 * @return the stale auction IDs, or null if the whole cache must be fetched
+	 */
+	public synchronized List<Integer> getStale() {
+		return this.complete ? new ArrayList<>(this.stale) : null;
+	}
+
+	/**
+	 * Marks a listing as changed.
+	 * @param auctionId the auction ID of the changed listing, or -1 if any listing may have changed
+	 */
+	public synchronized void invalidate(int auctionId) {
+		this.version++;
+		if (auctionId < 0)
+			this.complete = false;
+		else
+			this.stale.add(auctionId);
+	}
+
+	/**
+	 * Replaces the whole cache with freshly fetched listings.
+	 * @param version  the version of the cache when the fetch started
+	 * @param listings all listings
+	 * @return true if the listings were installed, false if the cache changed during the fetch
+	 */
+	public synchronized boolean fill(long version, List<ListingSummary> listings) {
+		if (this.version != version)
+			return false;
+		this.listings.clear();
+		for (ListingSummary item : listings)
+			this.listings.put(item.getAuctionId(), item);
+		this.stale.clear();
+		this.complete = true;
+		return true;
+	}
+
+	/**
+	 * Replaces stale listings with freshly fetched ones.
+	 * @param version   the version of the cache when the fetch started
+	 * @param auctionIds the auction IDs that were fetched
+	 * @param listings   the fetched listings, omitting any that no longer exist
+	 * @return true if the listings were installed, false if the cache changed during the fetch
+	 */
+	public synchronized boolean refresh(long version, List<Integer> auctionIds, List<ListingSummary> listings) {
+		if (this.version != version)
+			return false;
+		for (int auctionId : auctionIds)
+			this.listings.remove(auctionId);
+		for (ListingSummary item : listings)
+			this.listings.put(item.getAuctionId(), item);
+		this.stale.removeAll(auctionIds);
+		return true;
+	}
+}
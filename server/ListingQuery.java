@@ -0,0 +1,98 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * A query over auction listings that filters by text and status and sorts the
+ * result. Queries are evaluated in parallel over the partitions of a listing
+ * snapshot, and ties are always broken by auction ID so every replica returns
+ * the same list.
+ * @author Thomas Watkins
+ */
+public class ListingQuery implements Serializable {
+
+	private static final long serialVersionUID = -3852654084656525574L;
+
+	/**
+	 * The orders a query result can be sorted in.
+	 */
+	public enum Sort {
+		/** Oldest listing first. */
+		AUCTION_ID,
+		/** Highest bid first. */
+		HIGHEST_BID,
+		/** Soonest ending timed auction first, then auctions with no end time. */
+		ENDING_SOONEST
+	}
+
+	/** A query matching every listing in auction ID order. */
+	public static final ListingQuery ALL = new ListingQuery(null, false, Sort.AUCTION_ID);
+
+	private String text;
+	private boolean liveOnly;
+	private Sort sort;
+
+	/**
+	 * Constructor. Creates a ListingQuery.
+	 * @param text     text the item name or description must contain, ignoring case, or null to match any item
+	 * @param liveOnly whether to only match auctions that are still open
+	 * @param sort     the order of the result
+	 */
+	public ListingQuery(String text, boolean liveOnly, Sort sort) {
+		this.text = (text == null || text.isEmpty()) ? null : text.toLowerCase(Locale.ROOT);
+		this.liveOnly = liveOnly;
+		this.sort = sort == null ? Sort.AUCTION_ID : sort;
+	}
+
+	/**
+	 * Returns whether a listing matches this query.
+	 * @param item the listing
+	 * @return true if the listing matches
+	 */
+	public boolean matches(AuctionItem item) {
+		if (this.liveOnly && !item.isLive())
+			return false;
+		if (this.text == null)
+			return true;
+		return contains(item.getItemName()) || contains(item.getItemDescription());
+	}
+
+	/**
+	 * Evaluates this query over a snapshot of the listings. Each partition of the
+	 * snapshot is filtered in parallel and the matches are merge sorted, using the
+	 * fork-join pool the caller runs in. Only a summary of each listing is returned.
+	 * @param listings the listings by auction ID
+	 * @return summaries of the matching listings in order
+	 */
+	public ArrayList<ListingSummary> execute(PersistentIntMap<AuctionItem> listings) {
+		return listings.partitions().parallelStream()
+				.flatMap(p -> p.values().stream())
+				.filter(this::matches)
+				.sorted(this.comparator())
+				.map(ListingSummary::new)
+				.collect(Collectors.toCollection(ArrayList::new));
+	}
+
+	/**
+	 * Returns the order of this querys result.
+	 * @return the comparator for the sort order, tie broken by auction ID
+	 */
+	private Comparator<AuctionItem> comparator() {
+		Comparator<AuctionItem> byId = Comparator.comparingInt(AuctionItem::getAuctionID);
+		switch (this.sort) {
+		case HIGHEST_BID:
+			return Comparator.comparingLong(AuctionItem::getHighestBid).reversed().thenComparing(byId);
+		case ENDING_SOONEST:
+			return Comparator.comparingLong((AuctionItem i) -> i.getEndTime() == 0 ? Long.MAX_VALUE : i.getEndTime())
+					.thenComparing(byId);
+		default:
+			return byId;
+		}
+	}
+
+	private boolean contains(String field) {
+		return field != null && field.toLowerCase(Locale.ROOT).contains(this.text);
+	}
+}
@@ -0,0 +1,147 @@
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * The short form of a listing returned when browsing and searching: enough to
+ * list an auction, without the description, the seller's account or the bids.
+ * The whole listing is fetched with {@link IAuction#getAuction(int)}.
+ * @author Thomas Watkins
+ */
+public class ListingSummary implements Serializable {
+
+	private static final long serialVersionUID = -3030699108479977878L;
+
+	private final int auctionId;
+	private final String itemName;
+	private final String seller;
+	private final long price;
+	private final boolean live;
+	private final int bidCount;
+	private final long endTime;
+	private final long startTime;
+	private final long floor;
+	private final AuctionType type;
+
+	/**
+	 * Constructor. Creates a ListingSummary of a listing.
+	 * @param item the listing
+	 */
+	public ListingSummary(AuctionItem item) {
+		this.auctionId = item.getAuctionID();
+		this.itemName = item.getItemName();
+		this.seller = item.getOwner().getUsername();
+		this.price = item.getHighestBid();
+		this.live = item.isLive();
+		this.bidCount = item.getBidCount();
+		this.endTime = item.getEndTime();
+		this.startTime = item.getStartTime();
+		this.type = item.getAuctionType();
+		// The price of a Dutch auction falls to its reserve, which is kept hidden for other auctions
+		this.floor = this.type instanceof DutchAuction ? item.getReservePrice() : 0;
+	}
+
+	/**
+	 * Returns the auction ID of the listing.
+	 * @return the auction ID
+	 */
+	public int getAuctionId() {
+		return this.auctionId;
+	}
+
+	/**
+	 * Returns the name of the item.
+	 * @return the item name
+	 */
+	public String getItemName() {
+		return this.itemName;
+	}
+
+	/**
+	 * Returns the username of the seller.
+	 * @return the seller
+	 */
+	public String getSeller() {
+		return this.seller;
+	}
+
+	/**
+	 * Returns the highest bid, or the starting price if there are no bids or the bids are sealed.
+	 * @return the price in pence
+	 */
+	public long getPrice() {
+		return this.price;
+	}
+
+	/**
+	 * Returns whether the auction is still open.
+	 * @return true if the auction is live
+	 */
+	public boolean isLive() {
+		return this.live;
+	}
+
+	/**
+	 * Returns the number of bids placed.
+	 * @return the number of bids
+	 */
+	public int getBidCount() {
+		return this.bidCount;
+	}
+
+	/**
+	 * Returns the end time of the auction.
+	 * @return the end time in milliseconds since the epoch, or 0 if it has none
+	 */
+	public long getEndTime() {
+		return this.endTime;
+	}
+
+	/**
+	 * Overriding the toString method to display this listing.
+	 * @return this listing as a string
+	 */
+	public String toString() {
+		String summary = "Auction ID: " + this.auctionId + "\n" + "Seller: " + this.seller + "\n" + "Item: " + this.itemName
+				+ "\n" + "Type: " + this.type.describe() + "\n";
+		if (this.live && this.type instanceof DutchAuction)
+			summary += "Current Price: £"
+					+ Money.format(((DutchAuction) this.type).priceAt(this.price, this.floor, this.startTime,
+							System.currentTimeMillis())) + "\n";
+		else if (this.live && this.type instanceof SealedBidAuction)
+			summary += "Sealed Bids: " + this.bidCount + "\n";
+		else
+			summary += "Highest Bid: £" + Money.format(this.price) + " (" + this.bidCount + " bids)" + "\n";
+		summary += "Staus: " + (this.live ? "LIVE" : "CLOSED");
+		if (this.live && this.endTime != 0)
+			summary += "\n" + "Ends: " + new Date(this.endTime);
+		return summary;
+	}
+
+	/**
+	 * Overriding the equals method. If all fields are equal return true, false otherwise.
+	 * @param obj the ListingSummary to be compared
+	 * @return true if this ListingSummary and the comparison object are equal
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		ListingSummary other = (ListingSummary) obj;
+		return this.auctionId == other.auctionId && this.price == other.price && this.live == other.live
+				&& this.bidCount == other.bidCount && this.endTime == other.endTime && this.startTime == other.startTime
+				&& this.floor == other.floor
+				&& Objects.equals(this.itemName, other.itemName) && Objects.equals(this.seller, other.seller)
+				&& Objects.equals(this.type, other.type);
+	}
+
+	/**
+	 * Overriding the hashCode method to be consistent with equals.
+	 * @return the hash code of this ListingSummary
+	 */
+	public int hashCode() {
+		return Objects.hash(this.auctionId, this.itemName, this.seller, this.price, this.live, this.bidCount,
+				this.endTime, this.startTime, this.floor, this.type);
+	}
+}
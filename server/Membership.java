@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgroups.Address;
+import org.jgroups.View;
+
+/**
+ * Keeps a Frontends picture of the group up to date from JGroups view changes: the
+ * live Backends and Frontends, and the quorum of agreeing Backends a vote needs.
+ * Also holds the load signals capacity decisions are based on, the number of
+ * replicated calls in flight and the response time of each Backend.
+ *
+ * A Backend that leaves the view after being suspected is counted as crashed,
+ * one that leaves without being suspected was shut down. Either way the quorum is
+ * recomputed from the Backends that remain, so the group keeps voting.
+ * @author Thomas Watkins
+ */
+public class Membership {
+
+	private final ReplicaMonitor replicas;
+	private final Metrics metrics;
+	private final Set<Address> suspected;
+	private final AtomicInteger inFlight;
+	private volatile List<Address> backends;
+	private volatile List<Address> frontends;
+	private volatile int quorum;
+
+	/**
+	 * Constructor. Creates a Membership with no members.
+	 * @param replicas the monitor of Backend response times
+	 * @param metrics  the metrics to record joins, leaves and crashes to
+	 */
+	public Membership(ReplicaMonitor replicas, Metrics metrics) {
+		this.replicas = replicas;
+		this.metrics = metrics;
+		this.suspected = ConcurrentHashMap.newKeySet();
+		this.inFlight = new AtomicInteger();
+		this.backends = Collections.emptyList();
+		this.frontends = Collections.emptyList();
+		this.quorum = 1;
+	}
+
+	/**
+	 * Updates the live members and the quorum from a new view.
+	 * @param view the new view of the group
+	 */
+	public synchronized void viewAccepted(View view) {
+		List<Address> backends = GroupUtils.getBackends(view);
+		for (Address a : backends) {
+			if (!this.backends.contains(a))
+				this.metrics.increment("membership.joins");
+		}
+		for (Address a : this.backends) {
+			if (backends.contains(a))
+				continue;
+			if (this.suspected.remove(a)) {
+				this.metrics.increment("membership.crashes");
+				System.out.printf("replica %s crashed\n", a);
+			} else {
+				this.metrics.increment("membership.leaves");
+			}
+		}
+		this.suspected.retainAll(view.getMembers());
+		this.replicas.retain(view.getMembers());
+
+		this.backends = Collections.unmodifiableList(backends);
+		this.frontends = Collections.unmodifiableList(GroupUtils.getFrontends(view));
+		this.quorum = backends.size() / 2 + 1;
+		System.out.printf("%d live backends, quorum %d\n", backends.size(), this.quorum);
+	}
+
+	/**
+	 * Records that a member is suspected of having crashed.
+	 * @param member the suspected member
+	 */
+	public void suspect(Address member) {
+		this.suspected.add(member);
+		this.metrics.increment("membership.suspicions");
+	}
+
+	/**
+	 * Returns the live Backends, oldest first.
+	 * @return the live Backends
+	 */
+	public List<Address> getBackends() {
+		return this.backends;
+	}
+
+	/**
+	 * Returns the live Frontends, oldest first.
+	 * @return the live Frontends
+	 */
+	public List<Address> getFrontends() {
+		return this.frontends;
+	}
+
+	/**
+	 * Returns the number of agreeing Backends that makes a majority of the live Backends.
+	 * @return the quorum
+	 */
+	public int getQuorum() {
+		return this.quorum;
+	}
+
+	/**
+	 * Returns whether a Frontend is the oldest, which acts for the Frontends in
+	 * group wide duties such as repair and scaling.
+	 * @param self the address of the Frontend
+	 * @return true if the Frontend is the oldest
+	 */
+	public boolean isCoordinator(Address self) {
+		List<Address> frontends = this.frontends;
+		return !frontends.isEmpty() && frontends.get(0).equals(self);
+	}
+
+	/**
+	 * Records that a replicated call has been sent.
+	 */
+	public void callStarted() {
+		this.inFlight.incrementAndGet();
+	}
+
+	/**
+	 * Records that a replicated call has completed.
+	 */
+	public void callEnded() {
+		this.inFlight.decrementAndGet();
+	}
+
+	/**
+	 * Returns the number of replicated calls in flight, i.e. how many requests are
+	 * queued at or being applied by the Backends.
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		return this.inFlight.get();
+	}
+
+	/**
+	 * Returns the response time of a live Backend.
+	 * @param replica the Backend
+	 * @return the moving average response time in milliseconds
+	 */
+	public double getLatencyMillis(Address replica) {
+		return this.replicas.getEwmaMillis(replica);
+	}
+
+	/**
+	 * Returns the median response time of the live Backends, which a single slow
+	 * Backend doesn't move as it is demoted to a follower instead.
+	 * @return the median moving average response time in milliseconds
+	 */
+	public double getMedianLatencyMillis() {
+		List<Double> latencies = new ArrayList<>();
+		for (Address a : this.backends)
+			latencies.add(this.replicas.getEwmaMillis(a));
+		if (latencies.isEmpty())
+			return 0;
+		Collections.sort(latencies);
+		return latencies.get(latencies.size() / 2);
+	}
+}
@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Latency histograms and counters for a Frontend or Backend. Metrics are created
+ * on first use and exposed both as a JMX MBean and, if a port is configured, as
+ * plain text over HTTP at /metrics.
+ * @author Thomas Watkins
+ */
+public class Metrics implements MetricsMBean {
+
+	private final String role;
+	private final ConcurrentHashMap<String, LatencyHistogram> latencies;
+	private final ConcurrentHashMap<String, LongAdder> counters;
+	private HttpServer httpServer;
+
+	/**
+	 * Constructor. Creates an empty set of metrics.
+	 * @param role the role of the owning server (frontend/backend)
+	 */
+	public Metrics(String role) {
+		this.role = role;
+		this.latencies = new ConcurrentHashMap<>();
+		this.counters = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Records a latency sample against a histogram.
+	 * @param name  the name of the histogram
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void recordLatency(String name, long nanos) {
+		latencies.computeIfAbsent(name, k -> new LatencyHistogram()).record(nanos);
+	}
+
+	/**
+	 * Records the time elapsed since a start time against a histogram.
+	 * @param name      the name of the histogram
+	 * @param startNanos the start time from System.nanoTime()
+	 */
+	public void recordSince(String name, long startNanos) {
+		recordLatency(name, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Increments a counter by one.
+	 * @param name the name of the counter
+	 */
+	public void increment(String name) {
+		add(name, 1);
+	}
+
+	/**
+	 * Adds to a counter.
+	 * @param name  the name of the counter
+	 * @param value the amount to add
+	 */
+	public void add(String name, long value) {
+		counters.computeIfAbsent(name, k -> new LongAdder()).add(value);
+	}
+
+	/**
+	 * Returns the histogram with the given name, or null if it doesn't exist.
+	 * @param name the name of the histogram
+	 * @return the histogram
+	 */
+	public LatencyHistogram getLatency(String name) {
+		return latencies.get(name);
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server.
+	 * @param name the unique name for this server, e.g. its JGroups address
+	 */
+	public void registerMBean(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("auction:type=" + role + ",name=" + ObjectName.quote(name));
+			if (!server.isRegistered(objectName))
+				server.registerMBean(this, objectName);
+		} catch (Exception e) {
+			System.err.printf("🆘    could not register metrics MBean: %s\n", e.getMessage());
+		}
+	}
+
+	/**
+	 * Starts the text endpoint if the "metrics.port" system property is set.
+	 */
+	public void startHttpEndpoint() {
+		String port = System.getProperty("metrics.port");
+		if (port == null)
+			return;
+		try {
+			this.httpServer = HttpServer.create(new InetSocketAddress(Integer.parseInt(port)), 0);
+			this.httpServer.createContext("/metrics", exchange -> {
+				byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream os = exchange.getResponseBody()) {
+					os.write(body);
+				}
+			});
+			this.httpServer.start();
+			System.out.printf("✅    metrics available on http://localhost:%s/metrics\n", port);
+		} catch (IOException | NumberFormatException e) {
+			System.err.printf("🆘    could not start metrics endpoint on port: %s\n", port);
+		}
+	}
+
+	/**
+	 * Stops the text endpoint if it was started.
+	 */
+	public void stopHttpEndpoint() {
+		if (this.httpServer != null)
+			this.httpServer.stop(0);
+	}
+
+	/**
+	 * @see MetricsMBean#scrape()
+	 */
+	public String scrape() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(latencies).entrySet()) {
+			String labels = "{role=\"" + role + "\",name=\"" + e.getKey() + "\"}";
+			LatencyHistogram h = e.getValue();
+			sb.append("auction_latency_count").append(labels).append(' ').append(h.getCount()).append('\n');
+			sb.append("auction_latency_sum_ms").append(labels).append(' ').append(h.getSumMillis()).append('\n');
+			sb.append("auction_latency_p50_ms").append(labels).append(' ').append(h.getPercentileMillis(50)).append('\n');
+			sb.append("auction_latency_p99_ms").append(labels).append(' ').append(h.getPercentileMillis(99)).append('\n');
+			sb.append("auction_latency_max_ms").append(labels).append(' ').append(h.getMaxMillis()).append('\n');
+		}
+		for (Map.Entry<String, LongAdder> e : new TreeMap<>(counters).entrySet()) {
+			sb.append("auction_counter{role=\"").append(role).append("\",name=\"").append(e.getKey()).append("\"} ")
+					.append(e.getValue().sum()).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @see MetricsMBean#getLatencyNames()
+	 */
+	public String[] getLatencyNames() {
+		return new TreeMap<>(latencies).keySet().toArray(new String[0]);
+	}
+
+	/**
+	 * @see MetricsMBean#getCounterNames()
+	 */
+	public String[] getCounterNames() {
+		return new TreeMap<>(counters).keySet().toArray(new String[0]);
+	}
+
+	/**
+	 * @see MetricsMBean#getCounter()
+	 */
+	public long getCounter(String name) {
+		LongAdder counter = counters.get(name);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	/**
+	 * @see MetricsMBean#getLatencyPercentileMillis()
+	 */
+	public double getLatencyPercentileMillis(String name, double percentile) {
+		LatencyHistogram h = latencies.get(name);
+		return h == null ? 0 : h.getPercentileMillis(percentile);
+	}
+
+	/**
+	 * @see MetricsMBean#reset()
+	 */
+	public void reset() {
+		latencies.values().forEach(LatencyHistogram::reset);
+		counters.values().forEach(LongAdder::reset);
+	}
+}
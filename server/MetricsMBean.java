@@ -0,0 +1,44 @@
+/**
+ * The JMX management interface for a servers {@link Metrics}.
+ * @author Thomas Watkins
+ */
+public interface MetricsMBean {
+
+	/**
+	 * Returns every metric in the text exposition format.
+	 * @return every metric as text
+	 */
+	public String scrape();
+
+	/**
+	 * Returns the names of all latency histograms recorded so far.
+	 * @return the histogram names
+	 */
+	public String[] getLatencyNames();
+
+	/**
+	 * Returns the names of all counters recorded so far.
+	 * @return the counter names
+	 */
+	public String[] getCounterNames();
+
+	/**
+	 * Returns the value of a counter.
+	 * @param name the name of the counter
+	 * @return the value of the counter, 0 if it doesn't exist
+	 */
+	public long getCounter(String name);
+
+	/**
+	 * Returns a percentile of a latency histogram.
+	 * @param name       the name of the histogram
+	 * @param percentile the percentile to find (0-100)
+	 * @return the percentile latency in milliseconds, 0 if it doesn't exist
+	 */
+	public double getLatencyPercentileMillis(String name, double percentile);
+
+	/**
+	 * Clears all metrics.
+	 */
+	public void reset();
+}
@@ -0,0 +1,36 @@
+import java.math.BigDecimal;
+
+/**
+ * Helpers for amounts of money held as a long number of pence. Amounts are only
+ * converted to and from pounds at the edges (client input and display), so prices
+ * and bids compare exactly and every replica reaches the same result.
+ * @author Thomas Watkins
+ */
+public final class Money {
+
+	private Money() {
+	}
+
+	/**
+	 * Parses an amount in pounds, e.g. "12.5" or "12.50", into pence.
+	 * @param pounds the amount in pounds with at most two decimal places
+	 * @return the amount in pence
+	 * @throws NumberFormatException if the amount isn't a number or has more than two decimal places
+	 */
+	public static long parse(String pounds) {
+		try {
+			return new BigDecimal(pounds.trim()).movePointRight(2).longValueExact();
+		} catch (ArithmeticException e) {
+			throw new NumberFormatException("Amounts must have at most two decimal places: " + pounds);
+		}
+	}
+
+	/**
+	 * Formats an amount in pence as pounds, e.g. 1250 as "12.50".
+	 * @param pence the amount in pence
+	 * @return the amount in pounds with two decimal places
+	 */
+	public static String format(long pence) {
+		return BigDecimal.valueOf(pence, 2).toPlainString();
+	}
+}
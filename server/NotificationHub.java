@@ -0,0 +1,161 @@
+import java.rmi.RemoteException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes auction events from a Frontend to subscribed clients. Each subscriber
+ * has its own bounded queue drained by a shared pool, so a slow or unreachable
+ * client only ever loses its own oldest events and never delays other clients
+ * or the request path.
+ * @author Thomas Watkins
+ */
+public class NotificationHub {
+
+	private static final int QUEUE_CAPACITY = 64;
+	private static final int DELIVERY_THREADS = 4;
+
+	/**
+	 * A subscribed client and its pending events.
+	 */
+	private static class Subscriber {
+		private final IAuctionListener listener;
+		private final String username;
+		private final ArrayBlockingQueue<AuctionEvent> queue;
+		private final AtomicBoolean draining;
+
+		private Subscriber(IAuctionListener listener, String username) {
+			this.listener = listener;
+			this.username = username;
+			this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+			this.draining = new AtomicBoolean();
+		}
+	}
+
+	private final ConcurrentHashMap<IAuctionListener, Subscriber> subscribers;
+	private final ConcurrentHashMap<Integer, Set<Subscriber>> byAuction;
+	private final ConcurrentHashMap<Integer, String> highestBidders;
+	private final ExecutorService pool;
+	private final Metrics metrics;
+
+	/**
+	 * Constructor. Creates a NotificationHub with no subscribers.
+	 * @param metrics the metrics to record published and dropped events to
+	 */
+	public NotificationHub(Metrics metrics) {
+		this.subscribers = new ConcurrentHashMap<>();
+		this.byAuction = new ConcurrentHashMap<>();
+		this.highestBidders = new ConcurrentHashMap<>();
+		this.pool = Executors.newFixedThreadPool(DELIVERY_THREADS);
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Subscribes a client to events on an auction.
+	 * @param auctionId the auction ID of the auction
+	 * @param username  the username of the subscribing client, used for outbid events
+	 * @param listener  the clients callback
+	 */
+	public void subscribe(int auctionId, String username, IAuctionListener listener) {
+		Subscriber s = this.subscribers.computeIfAbsent(listener, k -> new Subscriber(listener, username));
+		this.byAuction.computeIfAbsent(auctionId, k -> ConcurrentHashMap.newKeySet()).add(s);
+	}
+
+	/**
+	 * Unsubscribes a client from events on an auction.
+	 * @param auctionId the auction ID of the auction
+	 * @param listener  the clients callback
+	 */
+	public void unsubscribe(int auctionId, IAuctionListener listener) {
+		Subscriber s = this.subscribers.get(listener);
+		Set<Subscriber> set = this.byAuction.get(auctionId);
+		if (s != null && set != null)
+			set.remove(s);
+	}
+
+	/**
+	 * Publishes a new highest bid, and an outbid event to the previous highest bidder.
+	 * @param auctionId the auction ID of the auction bid on
+	 * @param bid       the accepted bid
+	 */
+	public void bidAccepted(int auctionId, Bid bid) {
+		String bidder = bid.getBidder().getUsername();
+		String previous = this.highestBidders.put(auctionId, bidder);
+		Set<Subscriber> set = this.byAuction.get(auctionId);
+		if (set == null)
+			return;
+
+		AuctionEvent highest = new AuctionEvent(AuctionEvent.Type.NEW_HIGHEST_BID, auctionId, bidder, bid.getAmount(), null);
+		AuctionEvent outbid = new AuctionEvent(AuctionEvent.Type.OUTBID, auctionId, bidder, bid.getAmount(), null);
+		for (Subscriber s : set) {
+			this.publish(s, highest);
+			if (previous != null && !previous.equals(bidder) && previous.equals(s.username))
+				this.publish(s, outbid);
+		}
+	}
+
+	/**
+	 * Publishes the result of a closed auction and removes its subscriptions.
+	 * @param auctionId the auction ID of the closed auction
+	 * @param message   the winner or reserve not met message
+	 */
+	public void auctionClosed(int auctionId, String message) {
+		this.highestBidders.remove(auctionId);
+		Set<Subscriber> set = this.byAuction.remove(auctionId);
+		if (set == null)
+			return;
+
+		AuctionEvent closed = new AuctionEvent(AuctionEvent.Type.CLOSED, auctionId, null, 0, message);
+		for (Subscriber s : set)
+			this.publish(s, closed);
+	}
+
+	/**
+	 * Queues an event for a subscriber, dropping its oldest event if its queue is full.
+	 * @param s     the subscriber
+	 * @param event the event to queue
+	 */
+	private void publish(Subscriber s, AuctionEvent event) {
+		while (!s.queue.offer(event)) {
+			s.queue.poll();
+			this.metrics.increment("notifications.dropped");
+		}
+		this.metrics.increment("notifications.published");
+		if (s.draining.compareAndSet(false, true))
+			this.pool.execute(() -> this.drain(s));
+	}
+
+	/**
+	 * Delivers all queued events to a subscriber. A subscriber that can't be
+	 * reached is removed.
+	 * @param s the subscriber
+	 */
+	private void drain(Subscriber s) {
+		do {
+			AuctionEvent event;
+			while ((event = s.queue.poll()) != null) {
+				try {
+					s.listener.onEvent(event);
+				} catch (RemoteException e) {
+					this.remove(s);
+					s.queue.clear();
+					break;
+				}
+			}
+			s.draining.set(false);
+		} while (!s.queue.isEmpty() && s.draining.compareAndSet(false, true));
+	}
+
+	/**
+	 * Removes a subscriber from every auction.
+	 * @param s the subscriber
+	 */
+	private void remove(Subscriber s) {
+		this.subscribers.remove(s.listener, s);
+		this.byAuction.values().forEach(set -> set.remove(s));
+		this.metrics.increment("notifications.unreachable");
+	}
+}
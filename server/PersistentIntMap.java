@@ -0,0 +1,280 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable map from int keys to values, stored as a hash array mapped trie.
+ * Each level of the trie consumes 5 bits of the key, and nodes only hold the
+ * slots they use, indexed by a 32 bit bitmap. Adding or removing a key copies
+ * only the nodes on the path to it and shares the rest of the trie, so a map
+ * can be published to readers as a consistent snapshot without copying or locking.
+ * @author Thomas Watkins
+ *
+ * @param <V> the type of values
+ */
+public final class PersistentIntMap<V> implements Serializable {
+
+	private static final long serialVersionUID = -5177647422508159375L;
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null, 0);
+
+	/**
+	 * A key and its value.
+	 */
+	private static final class Leaf implements Serializable {
+		private static final long serialVersionUID = -5700334038608271274L;
+
+		private final int key;
+		private final Object value;
+
+		private Leaf(int key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * A node of the trie. Each slot holds either a Leaf or a child Node.
+	 */
+	private static final class Node implements Serializable {
+		private static final long serialVersionUID = -1163989347128079201L;
+
+		private final int bitmap;
+		private final Object[] slots;
+
+		private Node(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+	}
+
+	private final Node root;
+	private final int size;
+	private transient int hash;
+
+	private PersistentIntMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the empty map.
+	 * @return the empty map
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> PersistentIntMap<V> empty() {
+		return (PersistentIntMap<V>) EMPTY;
+	}
+
+	/**
+	 * Returns the number of keys in this map.
+	 * @return the number of keys
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the value for a key.
+	 * @param key the key
+	 * @return the value, or null if the key isn't in this map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		Node node = this.root;
+		for (int shift = 0; node != null; shift += BITS) {
+			int bit = 1 << ((key >>> shift) & MASK);
+			if ((node.bitmap & bit) == 0)
+				return null;
+			Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+			if (slot instanceof Leaf) {
+				Leaf leaf = (Leaf) slot;
+				return leaf.key == key ? (V) leaf.value : null;
+			}
+			node = (Node) slot;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether a key is in this map.
+	 * @param key the key
+	 * @return true if the key has a value
+	 */
+	public boolean containsKey(int key) {
+		return this.get(key) != null;
+	}
+
+	/**
+	 * Returns a map with a key set to a value. This map is unchanged.
+	 * @param key   the key
+	 * @param value the value, which must not be null
+	 * @return the new map
+	 */
+	public PersistentIntMap<V> plus(int key, V value) {
+		Objects.requireNonNull(value);
+		boolean added = !this.containsKey(key);
+		Node root = plus(this.root, 0, new Leaf(key, value));
+		return new PersistentIntMap<>(root, added ? this.size + 1 : this.size);
+	}
+
+	/**
+	 * Returns a map without a key. This map is unchanged.
+	 * @param key the key
+	 * @return the new map, or this map if the key isn't in it
+	 */
+	public PersistentIntMap<V> minus(int key) {
+		if (!this.containsKey(key))
+			return this;
+		return new PersistentIntMap<>(minus(this.root, 0, key), this.size - 1);
+	}
+
+	/**
+	 * Performs an action for each key and value, in no particular order.
+	 * @param action the action to perform
+	 */
+	public void forEach(BiConsumer<Integer, ? super V> action) {
+		forEach(this.root, action);
+	}
+
+	/**
+	 * Returns the values in this map, in no particular order.
+	 * @return a new list of the values
+	 */
+	public ArrayList<V> values() {
+		ArrayList<V> values = new ArrayList<>(this.size);
+		this.forEach((k, v) -> values.add(v));
+		return values;
+	}
+
+	/**
+	 * Splits this map into disjoint maps that together hold every key, one for
+	 * each used slot at the top of the trie. The maps share their nodes with this map.
+	 * @return up to 32 non-empty maps
+	 */
+	public List<PersistentIntMap<V>> partitions() {
+		List<PersistentIntMap<V>> partitions = new ArrayList<>();
+		if (this.root == null)
+			return partitions;
+		for (int i = 0, slot = 0; i < 32; i++) {
+			int bit = 1 << i;
+			if ((this.root.bitmap & bit) == 0)
+				continue;
+			Object child = this.root.slots[slot++];
+			partitions.add(new PersistentIntMap<>(new Node(bit, new Object[] { child }), count(child)));
+		}
+		return partitions;
+	}
+
+	/**
+	 * Overriding the equals method. Maps are equal if they hold equal values for the same keys.
+	 * @param obj the map to be compared
+	 * @return true if this map and the comparison object are equal
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		PersistentIntMap<?> other = (PersistentIntMap<?>) obj;
+		if (this.size != other.size || this.hashCode() != other.hashCode())
+			return false;
+		boolean[] equal = { true };
+		this.forEach((k, v) -> {
+			if (equal[0] && !v.equals(other.get(k)))
+				equal[0] = false;
+		});
+		return equal[0];
+	}
+
+	/**
+	 * Overriding the hashCode method to be consistent with equals. As the map is
+	 * immutable the hash is computed once.
+	 * @return the hash code of this map
+	 */
+	public int hashCode() {
+		int h = this.hash;
+		if (h == 0 && this.size > 0) {
+			int[] sum = { 0 };
+			this.forEach((k, v) -> sum[0] += k ^ v.hashCode());
+			h = sum[0];
+			this.hash = h;
+		}
+		return h;
+	}
+
+	private static Node plus(Node node, int shift, Leaf leaf) {
+		int bit = 1 << ((leaf.key >>> shift) & MASK);
+		if (node == null)
+			return new Node(bit, new Object[] { leaf });
+
+		int index = Integer.bitCount(node.bitmap & (bit - 1));
+		if ((node.bitmap & bit) == 0) {
+			// Insert the leaf into a free slot
+			Object[] slots = new Object[node.slots.length + 1];
+			System.arraycopy(node.slots, 0, slots, 0, index);
+			slots[index] = leaf;
+			System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+			return new Node(node.bitmap | bit, slots);
+		}
+
+		Object slot = node.slots[index];
+		Object replacement;
+		if (slot instanceof Node) {
+			replacement = plus((Node) slot, shift + BITS, leaf);
+		} else if (((Leaf) slot).key == leaf.key) {
+			replacement = leaf;
+		} else {
+			// Push the existing leaf down a level alongside the new one
+			replacement = plus(plus(null, shift + BITS, (Leaf) slot), shift + BITS, leaf);
+		}
+		Object[] slots = node.slots.clone();
+		slots[index] = replacement;
+		return new Node(node.bitmap, slots);
+	}
+
+	private static Node minus(Node node, int shift, int key) {
+		int bit = 1 << ((key >>> shift) & MASK);
+		int index = Integer.bitCount(node.bitmap & (bit - 1));
+		Object slot = node.slots[index];
+		Object replacement = slot instanceof Node ? minus((Node) slot, shift + BITS, key) : null;
+		if (replacement != null) {
+			Object[] slots = node.slots.clone();
+			slots[index] = replacement;
+			return new Node(node.bitmap, slots);
+		}
+
+		// Remove the now empty slot
+		if (node.slots.length == 1)
+			return null;
+		Object[] slots = new Object[node.slots.length - 1];
+		System.arraycopy(node.slots, 0, slots, 0, index);
+		System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+		return new Node(node.bitmap & ~bit, slots);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> void forEach(Node node, BiConsumer<Integer, ? super V> action) {
+		if (node == null)
+			return;
+		for (Object slot : node.slots) {
+			if (slot instanceof Leaf)
+				action.accept(((Leaf) slot).key, (V) ((Leaf) slot).value);
+			else
+				forEach((Node) slot, action);
+		}
+	}
+
+	private static int count(Object slot) {
+		if (slot instanceof Leaf)
+			return 1;
+		int n = 0;
+		for (Object child : ((Node) slot).slots)
+			n += count(child);
+		return n;
+	}
+}
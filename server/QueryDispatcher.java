@@ -0,0 +1,103 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.blocks.Response;
+import org.jgroups.blocks.RpcDispatcher;
+
+/**
+ * An RpcDispatcher that runs read-only queries on a separate pool so they never
+ * hold up the delivery thread that applies commands in order. The snapshot a
+ * query reads is taken when the query is delivered, so every replica answers
+ * from the same point in the command stream even though the query finishes later.
+ * Any method not registered as a query is invoked on the delivery thread as usual.
+ * @author Thomas Watkins
+ */
+public class QueryDispatcher extends RpcDispatcher {
+
+	/**
+	 * A read-only query over a Backend state snapshot.
+	 */
+	public interface Query {
+		/**
+		 * Evaluates the query.
+		 * @param snapshot the state the query was delivered against
+		 * @param args     the arguments of the remote call
+		 * @return         the result sent back to the caller
+		 */
+		public Object execute(BackendState snapshot, Object[] args) throws Exception;
+	}
+
+	private final Supplier<BackendState> snapshots;
+	private final ExecutorService pool;
+	private final Metrics metrics;
+	private final Map<String, Query> queries;
+
+	/**
+	 * Constructor. Creates a QueryDispatcher.
+	 * @param channel   the channel to dispatch calls from
+	 * @param server    the object methods are invoked on
+	 * @param snapshots supplies the current state snapshot
+	 * @param pool      the pool queries are run on
+	 * @param metrics   the metrics to record query latencies to
+	 */
+	public QueryDispatcher(JChannel channel, Object server, Supplier<BackendState> snapshots, ExecutorService pool,
+			Metrics metrics) {
+		super(channel, server);
+		this.snapshots = snapshots;
+		this.pool = pool;
+		this.metrics = metrics;
+		this.queries = new ConcurrentHashMap<>();
+		this.asyncDispatching(true);
+	}
+
+	/**
+	 * Runs calls to a method as a query on the pool.
+	 * @param method the name of the method
+	 * @param query  the query to run in place of the method
+	 */
+	public void registerQuery(String method, Query query) {
+		this.queries.put(method, query);
+	}
+
+	/**
+	 * Handles a remote call, replying from the pool if it is a query.
+	 * @param req the request message
+	 * @param rsp the response to reply with, or null if no reply is expected
+	 */
+	public void handle(Message req, Response rsp) throws Exception {
+		Object obj = req.getObject();
+		if (!(obj instanceof MethodCall))
+			throw new IllegalArgumentException("message does not contain a MethodCall object");
+		MethodCall call = (MethodCall) obj;
+
+		Query query = this.queries.get(call.getName());
+		if (query == null) {
+			Object result = call.invoke(this.server_obj);
+			if (rsp != null)
+				rsp.send(result, false);
+			return;
+		}
+
+		// Take the snapshot in delivery order, then evaluate the query off the delivery thread
+		long start = System.nanoTime();
+		BackendState snapshot = this.snapshots.get();
+		this.pool.execute(() -> {
+			Object result;
+			boolean exception = false;
+			try {
+				result = query.execute(snapshot, call.getArgs());
+			} catch (Throwable t) {
+				result = t;
+				exception = true;
+			}
+			this.metrics.recordSince(call.getName() + ".query", start);
+			if (rsp != null)
+				rsp.send(result, exception);
+		});
+	}
+}
@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jgroups.Address;
+
+/**
+ * Tracks an exponentially weighted moving average (EWMA) of each Backends response
+ * time. Replicas that are persistently slower than the rest of the group are demoted
+ * to followers, which still receive every request but are not waited on, and are
+ * promoted again once they catch up. At most a minority of replicas are ever
+ * demoted so a majority vote is always possible.
+ * @author Thomas Watkins
+ */
+public class ReplicaMonitor {
+
+	private static final double ALPHA = 0.2;
+
+	private final double slowFactor;
+	private final double promoteFactor;
+	private final double floorNanos;
+	private final ConcurrentHashMap<Address, Double> ewmas;
+	private final Set<Address> followers;
+	private final Metrics metrics;
+
+	/**
+	 * Constructor. Creates a ReplicaMonitor. Thresholds are read from the
+	 * "replica.slowFactor" and "replica.slowFloorMs" system properties.
+	 * @param metrics the metrics to record demotions and promotions to
+	 */
+	public ReplicaMonitor(Metrics metrics) {
+		this.slowFactor = Double.parseDouble(System.getProperty("replica.slowFactor", "3.0"));
+		this.promoteFactor = this.slowFactor / 2;
+		this.floorNanos = Long.getLong("replica.slowFloorMs", 20) * 1e6;
+		this.ewmas = new ConcurrentHashMap<>();
+		this.followers = ConcurrentHashMap.newKeySet();
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Records a response time for a replica and re-evaluates which replicas are followers.
+	 * @param replica the replica that responded
+	 * @param nanos   the response time in nanoseconds
+	 */
+	public void record(Address replica, long nanos) {
+		this.ewmas.merge(replica, (double) nanos, (old, sample) -> old + ALPHA * (sample - old));
+		this.reevaluate();
+	}
+
+	/**
+	 * Returns whether a replica is currently a follower that shouldn't be waited on.
+	 * @param replica the replica to check
+	 * @return true if the replica is a follower
+	 */
+	public boolean isFollower(Address replica) {
+		return this.followers.contains(replica);
+	}
+
+	/**
+	 * Returns the replicas that are currently followers.
+	 * @return the follower replicas
+	 */
+	public Set<Address> getFollowers() {
+		return Collections.unmodifiableSet(this.followers);
+	}
+
+	/**
+	 * Returns the current response time EWMA of a replica.
+	 * @param replica the replica
+	 * @return the EWMA in milliseconds, 0 if the replica has no samples
+	 */
+	public double getEwmaMillis(Address replica) {
+		Double ewma = this.ewmas.get(replica);
+		return ewma == null ? 0 : ewma / 1e6;
+	}
+
+	/**
+	 * Forgets any replicas that are no longer members of the group.
+	 * @param members the current members of the group
+	 */
+	public synchronized void retain(Collection<Address> members) {
+		this.ewmas.keySet().retainAll(members);
+		this.followers.retainAll(members);
+	}
+
+	/**
+	 * Demotes replicas whose EWMA is far above the group median and promotes
+	 * followers whose EWMA has come back down.
+	 */
+	private synchronized void reevaluate() {
+		List<Double> sorted = new ArrayList<>(this.ewmas.values());
+		if (sorted.size() < 3)
+			return;
+		Collections.sort(sorted);
+		double median = sorted.get(sorted.size() / 2);
+		int maxFollowers = (sorted.size() - 1) / 2;
+
+		for (Address a : new ArrayList<>(this.followers)) {
+			Double ewma = this.ewmas.get(a);
+			if (ewma == null || ewma < Math.max(this.floorNanos, median * this.promoteFactor)) {
+				this.followers.remove(a);
+				this.metrics.increment("replica.promotions");
+				System.out.printf("replica %s caught up and was promoted\n", a);
+			}
+		}
+
+		double slowThreshold = Math.max(this.floorNanos, median * this.slowFactor);
+		while (this.followers.size() < maxFollowers) {
+			Address slowest = null;
+			for (Address a : this.ewmas.keySet()) {
+				if (this.followers.contains(a) || this.ewmas.get(a) <= slowThreshold)
+					continue;
+				if (slowest == null || this.ewmas.get(a) > this.ewmas.get(slowest))
+					slowest = a;
+			}
+			if (slowest == null)
+				break;
+			this.followers.add(slowest);
+			this.metrics.increment("replica.demotions");
+			System.out.printf("replica %s is slow (%.1f ms) and was demoted to a follower\n", slowest,
+					this.ewmas.get(slowest) / 1e6);
+		}
+	}
+}
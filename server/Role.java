@@ -0,0 +1,81 @@
+/**
+ * The roles a user can hold. A user's roles are stored as a bitmask so a user can
+ * hold several roles, and checking a role is a single bitwise test.
+ * @author Thomas Watkins
+ */
+public enum Role {
+	BUYER(1),
+	SELLER(2);
+
+	private final int mask;
+
+	private Role(int mask) {
+		this.mask = mask;
+	}
+
+	/**
+	 * Returns the bit for this role.
+	 * @return the bit for this role
+	 */
+	public int getMask() {
+		return this.mask;
+	}
+
+	/**
+	 * Returns whether a bitmask of roles contains this role.
+	 * @param roles the bitmask of roles
+	 * @return true if this role is held
+	 */
+	public boolean in(int roles) {
+		return (roles & this.mask) != 0;
+	}
+
+	/**
+	 * Returns the bitmask for a set of roles.
+	 * @param roles the roles
+	 * @return the bitmask of the roles
+	 */
+	public static int of(Role... roles) {
+		int mask = 0;
+		for (Role r : roles)
+			mask |= r.mask;
+		return mask;
+	}
+
+	/**
+	 * Parses a legacy privilege string such as "SELLER", "BUYER" or "BUYER,SELLER".
+	 * Previously any privilege other than SELLER could bid, so a string naming no
+	 * known role is treated as BUYER.
+	 * @param privilege the privilege string
+	 * @return the bitmask of the roles
+	 */
+	public static int parse(String privilege) {
+		int mask = 0;
+		if (privilege != null) {
+			for (String name : privilege.split("[,|\\s]+")) {
+				for (Role r : values()) {
+					if (r.name().equalsIgnoreCase(name))
+						mask |= r.mask;
+				}
+			}
+		}
+		return mask == 0 ? BUYER.mask : mask;
+	}
+
+	/**
+	 * Returns a readable form of a bitmask of roles, e.g. "BUYER|SELLER".
+	 * @param roles the bitmask of roles
+	 * @return the names of the roles held
+	 */
+	public static String toString(int roles) {
+		StringBuilder sb = new StringBuilder();
+		for (Role r : values()) {
+			if (r.in(roles)) {
+				if (sb.length() > 0)
+					sb.append('|');
+				sb.append(r.name());
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * A sealed-bid auction: each buyer places one bid, which is hidden until the
+ * auction closes. The highest bid wins, paying either its own amount (first
+ * price) or the second highest bid, but at least the reserve (second price).
+ *
+ * A sealed bid is never compared with the other bids when it is placed. Bids
+ * are kept in a persistent map keyed by the bidders client ID, so placing one
+ * costs the same however many have been placed, and the winner and the price
+ * are found in a single pass over the bids at close. Ties go to the earlier bid.
+ * @author Thomas Watkins
+ */
+public class SealedBidAuction implements AuctionType {
+
+	private static final long serialVersionUID = -7019138907907846007L;
+
+	/** A sealed-bid auction won at the winning bid. */
+	public static final SealedBidAuction FIRST_PRICE = new SealedBidAuction(false);
+	/** A sealed-bid auction won at the second highest bid. */
+	public static final SealedBidAuction SECOND_PRICE = new SealedBidAuction(true);
+
+	private final boolean secondPrice;
+
+	private SealedBidAuction(boolean secondPrice) {
+		this.secondPrice = secondPrice;
+	}
+
+	/**
+	 * Places a sealed bid, which must be at least the starting price. A maximum
+	 * bid is taken as a sealed bid of its maximum.
+	 * @see AuctionType#bid(AuctionItem, Bid)
+	 */
+	public String bid(AuctionItem item, Bid bid) {
+		long amount = bid.isMaxBid() ? bid.getMaxAmount() : bid.getAmount();
+		if(amount < item.getStartingPrice())
+			return "Bid not registered as it is lower than the starting price of £" + Money.format(item.getStartingPrice()) + ".";
+		PersistentIntMap<Bid> sealed = item.getSealedBids();
+		int bidder = bid.getBidder().getClientId();
+		if(sealed.containsKey(bidder))
+			return "Bid not registered as you have already placed a sealed bid.";
+		item.setSealedBids(sealed.plus(bidder, EnglishAuction.autoBid(bid, amount, bid.getTime())));
+		return AuctionItem.BID_SEALED;
+	}
+
+	/**
+	 * Finds the highest and second highest bids in one pass and adds the winning
+	 * bid at the price paid, if it meets the reserve.
+	 * @see AuctionType#close(AuctionItem)
+	 */
+	public void close(AuctionItem item) {
+		Bid winner = null;
+		long second = item.getStartingPrice();
+		for(Bid b : item.getSealedBids().values()) {
+			if(winner == null || beats(b, winner)) {
+				if(winner != null)
+					second = Math.max(second, winner.getAmount());
+				winner = b;
+			} else {
+				second = Math.max(second, b.getAmount());
+			}
+		}
+		if(winner == null || winner.getAmount() < item.getReservePrice())
+			return;
+		long price = this.secondPrice ? Math.max(second, item.getReservePrice()) : winner.getAmount();
+		item.addWinningBid(EnglishAuction.autoBid(winner, price, winner.getTime()));
+	}
+
+	public String describe() {
+		return this.secondPrice ? "Sealed bid, second price" : "Sealed bid, first price";
+	}
+
+	/**
+	 * Returns whether a bid beats another, breaking ties by the earlier bid and then
+	 * the lower client ID so every replica picks the same winner.
+	 * @param a the bid
+	 * @param b the bid to beat
+	 * @return true if a beats b
+	 */
+	private static boolean beats(Bid a, Bid b) {
+		if(a.getAmount() != b.getAmount())
+			return a.getAmount() > b.getAmount();
+		if(a.getTime() != b.getTime())
+			return a.getTime() < b.getTime();
+		return a.getBidder().getClientId() < b.getBidder().getClientId();
+	}
+
+	/**
+	 * Overriding the hashCode method so it is the same in every process, as the
+	 * state hashes of replicas are compared.
+	 * @return the hash code of this SealedBidAuction
+	 */
+	public int hashCode() {
+		return this.secondPrice ? 3 : 2;
+	}
+
+	/**
+	 * Keeps a single instance of each pricing when deserialized.
+	 * @return the shared instance
+	 */
+	private Object readResolve() {
+		return this.secondPrice ? SECOND_PRICE : FIRST_PRICE;
+	}
+}
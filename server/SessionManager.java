@@ -0,0 +1,96 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.function.Supplier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies HMAC signed session tokens. The signing key is held in the
+ * replicated Backend state so every Frontend signs and verifies with the same key,
+ * and it is fetched once on first use.
+ * @author Thomas Watkins
+ */
+public class SessionManager {
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private final Supplier<String> keySource;
+	private final long ttlMillis;
+	private volatile SecretKeySpec key;
+
+	/**
+	 * Constructor. Creates a SessionManager. The lifetime of tokens is read from the
+	 * "session.ttlMinutes" system property.
+	 * @param keySource supplies the Base64 encoded signing key, or null if it is unavailable
+	 */
+	public SessionManager(Supplier<String> keySource) {
+		this.keySource = keySource;
+		this.ttlMillis = Long.getLong("session.ttlMinutes", 60) * 60000;
+	}
+
+	/**
+	 * Issues a token for an authenticated user.
+	 * @param user the authenticated user
+	 * @return the signed token, or null if the signing key is unavailable
+	 */
+	public SessionToken issue(UserAccount user) {
+		long expiry = System.currentTimeMillis() + this.ttlMillis;
+		byte[] mac = this.sign(user.getClientId(), user.getUsername(), user.getRoles(), expiry);
+		if (mac == null)
+			return null;
+		return new SessionToken(user.getClientId(), user.getUsername(), user.getRoles(), expiry, mac);
+	}
+
+	/**
+	 * Returns whether a token was issued by a Frontend and hasn't expired.
+	 * @param token the token to verify
+	 * @return true if the token is valid
+	 */
+	public boolean verify(SessionToken token) {
+		if (token == null || token.getMac() == null || token.getExpiry() < System.currentTimeMillis())
+			return false;
+		byte[] mac = this.sign(token.getClientId(), token.getUsername(), token.getRoles(), token.getExpiry());
+		return mac != null && MessageDigest.isEqual(mac, token.getMac());
+	}
+
+	/**
+	 * Computes the signature over the fields of a token.
+	 * @return the signature, or null if the signing key is unavailable
+	 */
+	private byte[] sign(int clientId, String username, int roles, long expiry) {
+		SecretKeySpec key = this.getKey();
+		if (key == null)
+			return null;
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+			mac.update(ByteBuffer.allocate(16).putInt(clientId).putInt(roles).putLong(expiry).array());
+			mac.update(username.getBytes(StandardCharsets.UTF_8));
+			return mac.doFinal();
+		} catch (GeneralSecurityException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the signing key, fetching it if this is the first use.
+	 * @return the signing key, or null if it is unavailable
+	 */
+	private SecretKeySpec getKey() {
+		if (this.key == null) {
+			synchronized (this) {
+				if (this.key == null) {
+					String encoded = this.keySource.get();
+					if (encoded != null)
+						this.key = new SecretKeySpec(Base64.getDecoder().decode(encoded), ALGORITHM);
+				}
+			}
+		}
+		return this.key;
+	}
+}
@@ -0,0 +1,74 @@
+import java.io.Serializable;
+
+/**
+ * A session token issued to a client once authenticated. The token is signed by
+ * the Frontend so any Frontend can verify it locally, and it is sent with every
+ * call that changes state in place of the clients UserAccount.
+ * @author Thomas Watkins
+ */
+public class SessionToken implements Serializable {
+
+	private static final long serialVersionUID = -6587094399989227530L;
+
+	private int clientId;
+	private String username;
+	private int roles;
+	private long expiry;
+	private byte[] mac;
+
+	/**
+	 * Constructor. Creates a SessionToken.
+	 * @param clientId  the client ID of the authenticated user
+	 * @param username  the username of the authenticated user
+	 * @param roles     the bitmask of roles of the authenticated user
+	 * @param expiry    the time the token expires in milliseconds since the epoch
+	 * @param mac       the signature over the other fields
+	 */
+	public SessionToken(int clientId, String username, int roles, long expiry, byte[] mac) {
+		this.clientId = clientId;
+		this.username = username;
+		this.roles = roles;
+		this.expiry = expiry;
+		this.mac = mac;
+	}
+
+	/**
+	 * Returns the client ID of the authenticated user.
+	 * @return the client ID
+	 */
+	public int getClientId() {
+		return this.clientId;
+	}
+
+	/**
+	 * Returns the username of the authenticated user.
+	 * @return the username
+	 */
+	public String getUsername() {
+		return this.username;
+	}
+
+	/**
+	 * Returns the roles of the authenticated user.
+	 * @return the bitmask of roles, see {@link Role}
+	 */
+	public int getRoles() {
+		return this.roles;
+	}
+
+	/**
+	 * Returns the time the token expires.
+	 * @return the expiry time in milliseconds since the epoch
+	 */
+	public long getExpiry() {
+		return this.expiry;
+	}
+
+	/**
+	 * Returns the signature of the token.
+	 * @return the signature
+	 */
+	public byte[] getMac() {
+		return this.mac;
+	}
+}
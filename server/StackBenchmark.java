@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.blocks.RequestOptions;
+import org.jgroups.blocks.ResponseMode;
+import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.util.RspList;
+import org.jgroups.util.Util;
+
+/**
+ * Measures the protocol stack selected with -Dgroup.stack on this machine. Starts
+ * Backends in this process and, as a Frontend would, measures the latency of
+ * bids sent one at a time, the throughput of bids sent concurrently, and the
+ * time to transfer the whole state of a Backend with many listings.
+ *
+ * Usage: java -cp jgroups-3.6.20.Final.jar:. -Djava.net.preferIPv4Stack=true
+ *        -Djgroups.bind_addr=127.0.0.1 -Dgroup.stack=udp StackBenchmark [backends] [listings]
+ * Run with no other cluster on the same GROUP.
+ * @author Thomas Watkins
+ */
+public class StackBenchmark {
+
+	private static final int BIDS = 2000;
+	private static final int THREADS = 8;
+	private static final int TRANSFERS = 10;
+
+	/**
+	 * Receives the notifications the Backend sends to Frontends.
+	 */
+	public static class Sink {
+		public void listingChanged(int auctionId) {
+		}
+
+		public void auctionEnded(int auctionId, String message) {
+		}
+	}
+
+	/**
+	 * Main method. Runs the benchmark.
+	 * @param args the optional number of Backends and listings
+	 */
+	public static void main(String[] args) throws Exception {
+		int replicas = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		int listings = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+		for (int i = 0; i < replicas; i++)
+			new Backend();
+		JChannel channel = GroupUtils.connect(GroupUtils.FRONTEND);
+		RpcDispatcher dispatcher = new RpcDispatcher(channel, new Sink());
+		List<Address> backends = GroupUtils.getBackends(channel.getView());
+
+		// The seed user tom is registered with client ID 1 and max with client ID 3
+		UserAccount buyer = new UserAccount("max", null, Role.of(Role.BUYER));
+		buyer.setClientId(3);
+		for (int i = 0; i < listings; i++) {
+			AuctionItem item = new AuctionItem(null, "item " + i, "a long description of item " + i, true, 100, 500);
+			dispatcher.callRemoteMethods(backends, "createAuctionReq", new Object[] { 1, item },
+					new Class[] { int.class, AuctionItem.class }, sync());
+		}
+
+		// Warm up the stack and the Backends before timing
+		for (int i = 0; i < BIDS; i++)
+			bid(dispatcher, backends, buyer, 1 + i % THREADS, 1000 + i);
+
+		// Latency of bids sent one at a time
+		LatencyHistogram latency = new LatencyHistogram();
+		long amount = 1000 + BIDS;
+		long total = 0;
+		for (int i = 0; i < BIDS; i++) {
+			long start = System.nanoTime();
+			bid(dispatcher, backends, buyer, 1, amount++);
+			long elapsed = System.nanoTime() - start;
+			latency.record(elapsed);
+			total += elapsed;
+		}
+
+		// Throughput of bids sent concurrently, one auction per thread
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> futures = new ArrayList<>();
+		long first = amount;
+		long start = System.nanoTime();
+		for (int t = 0; t < THREADS; t++) {
+			int auctionId = 2 + t;
+			futures.add(pool.submit(() -> {
+				for (int i = 0; i < BIDS; i++)
+					bid(dispatcher, backends, buyer, auctionId, first + i);
+				return null;
+			}));
+		}
+		for (Future<?> f : futures)
+			f.get();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+
+		// Time to transfer the state of one Backend
+		LatencyHistogram transfer = new LatencyHistogram();
+		int bytes = 0;
+		for (int i = 0; i < TRANSFERS; i++) {
+			start = System.nanoTime();
+			RspList<BackendState> rsps = dispatcher.callRemoteMethods(backends.subList(0, 1), "getAllState",
+					new Object[] {}, new Class[] {}, sync());
+			transfer.record(System.nanoTime() - start);
+			bytes = Util.objectToByteBuffer(rsps.getFirst()).length;
+		}
+
+		System.out.printf("stack %s, %d backends, %d listings\n", System.getProperty("group.stack", "udp"), replicas,
+				listings);
+		System.out.printf("bid latency (ms)      mean %.3f  p50 %.2f  p99 %.2f  max %.2f\n", total / 1e6 / BIDS,
+				latency.getPercentileMillis(50), latency.getPercentileMillis(99), latency.getMaxMillis());
+		System.out.printf("bid throughput        %.0f bids/s with %d threads\n", THREADS * BIDS / seconds, THREADS);
+		System.out.printf("state transfer (ms)   p50 %.2f  max %.2f  (%d KB)\n", transfer.getPercentileMillis(50),
+				transfer.getMaxMillis(), bytes / 1024);
+		System.exit(0);
+	}
+
+	private static void bid(RpcDispatcher dispatcher, List<Address> backends, UserAccount buyer, int auctionId,
+			long amount) throws Exception {
+		dispatcher.callRemoteMethods(backends, "bidOnItemReq", new Object[] { auctionId, new Bid(buyer, amount) },
+				new Class[] { int.class, Bid.class }, sync());
+	}
+
+	private static RequestOptions sync() {
+		return new RequestOptions(ResponseMode.GET_ALL, 60000);
+	}
+}
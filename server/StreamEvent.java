@@ -0,0 +1,151 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * An event in the stream of commands a Backend has applied, for downstream
+ * consumers such as analytics and settlement. Every replica applies the same
+ * commands in the same order, so every replica gives an event the same sequence
+ * number and a consumer can resume from any Backend.
+ * @author Thomas Watkins
+ */
+public class StreamEvent implements Serializable {
+
+	private static final long serialVersionUID = 4980827502766569369L;
+
+	/**
+	 * The types of command that produce an event.
+	 */
+	public enum Type {
+		CREATED, BID, CLOSED
+	}
+
+	private long seq;
+	private Type type;
+	private int auctionId;
+	private String username;
+	private long amount;
+	private long time;
+	private String message;
+
+	/**
+	 * Constructor. Creates a StreamEvent.
+	 * @param seq       the sequence number of the event
+	 * @param type      the type of event
+	 * @param auctionId the auction ID of the auction the event occurred on
+	 * @param username  the seller of a created auction, the bidder of a bid or the
+	 *                  winner of a closed auction, or null if there is none
+	 * @param amount    the starting price of a created auction, the highest bid after
+	 *                  a bid or the price an auction closed at in pence, 0 if hidden
+	 * @param time      the time the command was stamped with, or applied at if it
+	 *                  has none, in milliseconds since the epoch
+	 * @param message   the item name of a created auction, or the result of a bid or close
+	 */
+	public StreamEvent(long seq, Type type, int auctionId, String username, long amount, long time, String message) {
+		this.seq = seq;
+		this.type = type;
+		this.auctionId = auctionId;
+		this.username = username;
+		this.amount = amount;
+		this.time = time;
+		this.message = message;
+	}
+
+	/**
+	 * Returns the sequence number of this event.
+	 * @return the sequence number
+	 */
+	public long getSeq() {
+		return this.seq;
+	}
+
+	/**
+	 * Returns the type of this event.
+	 * @return the type of this event
+	 */
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns the auction ID of the auction this event occurred on.
+	 * @return the auction ID
+	 */
+	public int getAuctionId() {
+		return this.auctionId;
+	}
+
+	/**
+	 * Returns the seller, bidder or winner of this event.
+	 * @return the username, or null if there is none
+	 */
+	public String getUsername() {
+		return this.username;
+	}
+
+	/**
+	 * Returns the amount of this event.
+	 * @return the amount in pence
+	 */
+	public long getAmount() {
+		return this.amount;
+	}
+
+	/**
+	 * Returns the time of this event.
+	 * @return the time in milliseconds since the epoch
+	 */
+	public long getTime() {
+		return this.time;
+	}
+
+	/**
+	 * Returns the item name or result of this event.
+	 * @return the message
+	 */
+	public String getMessage() {
+		return this.message;
+	}
+
+	/**
+	 * Writes this event in the segment file format, so it can be read by consumers
+	 * that aren't written in Java.
+	 * @param out the output to write to
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeLong(this.seq);
+		out.writeByte(this.type.ordinal());
+		out.writeInt(this.auctionId);
+		out.writeUTF(this.username == null ? "" : this.username);
+		out.writeLong(this.amount);
+		out.writeLong(this.time);
+		out.writeUTF(this.message == null ? "" : this.message);
+	}
+
+	/**
+	 * Reads an event written by {@link #writeTo(DataOutput)}.
+	 * @param in the input to read from
+	 * @return   the event
+	 */
+	public static StreamEvent readFrom(DataInput in) throws IOException {
+		long seq = in.readLong();
+		Type type = Type.values()[in.readByte()];
+		int auctionId = in.readInt();
+		String username = in.readUTF();
+		long amount = in.readLong();
+		long time = in.readLong();
+		String message = in.readUTF();
+		return new StreamEvent(seq, type, auctionId, username.isEmpty() ? null : username, amount, time,
+				message.isEmpty() ? null : message);
+	}
+
+	/**
+	 * Overriding the toString method to display this event.
+	 * @return this event as a string
+	 */
+	public String toString() {
+		return this.seq + " " + this.type + " auction " + this.auctionId + (this.username == null ? "" : " " + this.username)
+				+ " £" + Money.format(this.amount) + (this.message == null ? "" : " " + this.message);
+	}
+}
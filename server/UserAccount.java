@@ -1,37 +1,60 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
  * An implementation of a User Account for a client.
  * Contains state of the users username, email, ID and 
- * priveleges.
+ * roles.
  * @author Thomas Watkins
  *
  */
 public class UserAccount implements Serializable {
+
+	// Kept from the version with a String privilege so existing state can still be read
+	private static final long serialVersionUID = -6121118359709949527L;
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("clientId", int.class),
+			new ObjectStreamField("username", String.class),
+			new ObjectStreamField("email", String.class),
+			new ObjectStreamField("roles", int.class),
+			new ObjectStreamField("privilege", String.class) };
 	
 	private int clientId;
 	private String username;	
 	private String email;
-	private String privilege;
+	private int roles;
+	private transient int hash;
 	
 	/**
 	 * Constructor. Creates a new User Account.
-	 * @param username  the username for this user
-	 * @param email     the email address for this user
-	 * @param privilege the priveleges for this user (SELLER/BUYER)
+	 * @param username the username for this user
+	 * @param email    the email address for this user
+	 * @param roles    the bitmask of roles for this user, see {@link Role#of(Role...)}
 	 */
-	public UserAccount(String username, String email, String privilege) {
+	public UserAccount(String username, String email, int roles) {
 		this.username = username;
 		this.email = email;
-		this.privilege = privilege;
+		this.roles = roles;
 	}
 		
 	/**
-	 * Returns this users priveleges
-	 * @return this users priveleges
+	 * Returns this users roles
+	 * @return the bitmask of this users roles
+	 */
+	public int getRoles() {
+		return this.roles;
+	}
+
+	/**
+	 * Returns whether this user holds a role
+	 * @param role the role to check
+	 * @return true if this user holds the role
 	 */
-	public String getPrivelige() {
-		return this.privilege;
+	public boolean hasRole(Role role) {
+		return role.in(this.roles);
 	}
 	
 	/**
@@ -48,6 +71,7 @@ public class UserAccount implements Serializable {
 	 */
 	public void setClientId(int clientId) {
 		this.clientId = clientId;
+		this.hash = 0;
 	}
 	
 	/**
@@ -94,5 +118,54 @@ public class UserAccount implements Serializable {
 		return true;
 	}
 
+	/**
+	 * Overriding the hashCode method to be consistent with equals. The hash is
+	 * cached until the client ID is assigned.
+	 * @return the hash code of this UserAccount
+	 */
+	public int hashCode() {
+		int h = this.hash;
+		if (h == 0) {
+			final int prime = 31;
+			h = 1;
+			h = prime * h + clientId;
+			h = prime * h + ((email == null) ? 0 : email.hashCode());
+			h = prime * h + ((username == null) ? 0 : username.hashCode());
+			this.hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * Writes this user with its roles as a bitmask. The legacy privilege string is left null.
+	 * @param out the stream to write to
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("clientId", this.clientId);
+		fields.put("username", this.username);
+		fields.put("email", this.email);
+		fields.put("roles", this.roles);
+		out.writeFields();
+	}
+
+	/**
+	 * Reads a user, converting the privilege string of a user written by an older
+	 * version into a bitmask of roles.
+	 * @param in the stream to read from
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		this.clientId = fields.get("clientId", 0);
+		this.username = (String) fields.get("username", null);
+		this.email = (String) fields.get("email", null);
+		this.roles = fields.get("roles", 0);
+		if (fields.defaulted("roles"))
+			this.roles = Role.parse((String) fields.get("privilege", null));
+	}
+
 	
 }
@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jgroups.util.Util;
+
+/**
+ * Compares the time a Frontend spends voting on browse results before and after
+ * hash based voting. Each replica returns its own deserialized copy of a large
+ * listing, as it would over JGroups, and one replica diverges so the majority
+ * must be found.
+ *
+ * Usage: java -cp jgroups-3.6.20.Final.jar:. VoteBenchmark [listings] [bidsPerListing]
+ * @author Thomas Watkins
+ */
+public class VoteBenchmark {
+
+	private static final int ITERATIONS = 20;
+
+	/**
+	 * Main method. Runs the benchmark for 5 to 15 replicas.
+	 * @param args the optional number of listings and bids per listing
+	 */
+	public static void main(String[] args) throws Exception {
+		int listings = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int bidsPerListing = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		byte[] browse = Util.objectToByteBuffer(createListings(listings, bidsPerListing, false));
+		byte[] divergent = Util.objectToByteBuffer(createListings(listings, bidsPerListing, true));
+		System.out.printf("%d listings, %d bids each, %d bytes per response\n", listings, bidsPerListing, browse.length);
+		System.out.printf("%-9s %15s %15s\n", "replicas", "pairwise (ms)", "hashed (ms)");
+
+		for (int replicas = 5; replicas <= 15; replicas += 2) {
+			// Warm up both implementations before timing them
+			for (int i = 0; i < 3; i++) {
+				pairwiseVote(responses(browse, divergent, replicas));
+				hashedVote(responses(browse, divergent, replicas));
+			}
+
+			long pairwise = 0;
+			long hashed = 0;
+			for (int i = 0; i < ITERATIONS; i++) {
+				List<Object> r = responses(browse, divergent, replicas);
+				long start = System.nanoTime();
+				pairwiseVote(r);
+				pairwise += System.nanoTime() - start;
+
+				r = responses(browse, divergent, replicas);
+				start = System.nanoTime();
+				hashedVote(r);
+				hashed += System.nanoTime() - start;
+			}
+			System.out.printf("%-9d %15.2f %15.2f\n", replicas, pairwise / 1e6 / ITERATIONS, hashed / 1e6 / ITERATIONS);
+		}
+	}
+
+	/**
+	 * Creates a browse result.
+	 * @param listings       the number of listings
+	 * @param bidsPerListing the number of bids on each listing
+	 * @param divergent      whether the last listing should have an extra bid
+	 * @return the listings
+	 */
+	private static ArrayList<AuctionItem> createListings(int listings, int bidsPerListing, boolean divergent) {
+		UserAccount seller = new UserAccount("tom", "tom@hotmail.com", Role.of(Role.SELLER));
+		seller.setClientId(1);
+		UserAccount buyer = new UserAccount("max", "max@hotmail.com", Role.of(Role.BUYER));
+		buyer.setClientId(3);
+
+		ArrayList<AuctionItem> list = new ArrayList<>();
+		for (int i = 1; i <= listings; i++) {
+			AuctionItem item = new AuctionItem(seller, "item " + i, "description of item " + i, true, 100, 500);
+			item.setAuctionID(i);
+			int bids = bidsPerListing + (divergent && i == listings ? 1 : 0);
+			for (int j = 1; j <= bids; j++) {
+				Bid bid = new Bid(buyer, 100 + j * 10);
+				bid.setTime(j);
+				item.bid(bid);
+			}
+			list.add(item);
+		}
+		return list;
+	}
+
+	/**
+	 * Deserializes a response for each replica, the last of which diverges.
+	 */
+	private static List<Object> responses(byte[] browse, byte[] divergent, int replicas) throws Exception {
+		List<Object> responses = new ArrayList<>();
+		for (int i = 0; i < replicas; i++)
+			responses.add(Util.objectFromByteBuffer(i == replicas - 1 ? divergent : browse));
+		return responses;
+	}
+
+	/**
+	 * Votes by hashing each response once.
+	 */
+	private static Object hashedVote(List<Object> responses) {
+		if (Voting.allEqual(responses))
+			return responses.get(0);
+		return Voting.findMajority(responses);
+	}
+
+	/**
+	 * Votes by comparing every pair of responses, as before the domain types
+	 * defined hashCode and distinct() therefore kept every response.
+	 */
+	private static Object pairwiseVote(List<Object> responses) {
+		boolean allEqual = true;
+		for (int i = 0; i < responses.size() && allEqual; i++) {
+			for (int j = 0; j < responses.size() && allEqual; j++)
+				allEqual = responses.get(i).equals(responses.get(j));
+		}
+		if (allEqual)
+			return responses.get(0);
+
+		int[] counts = new int[responses.size()];
+		for (int i = 0; i < responses.size(); i++) {
+			for (int j = 0; j < responses.size(); j++) {
+				if (responses.get(i).equals(responses.get(j)))
+					counts[i]++;
+			}
+		}
+		int modeIndex = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > counts[modeIndex])
+				modeIndex = i;
+		}
+		return responses.get(modeIndex);
+	}
+}
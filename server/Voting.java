@@ -0,0 +1,57 @@
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Helpers for voting on the responses of replicas. Responses are bucketed by hash
+ * code, so a vote over n responses costs O(n) hash and equals calls rather than
+ * comparing every pair of responses.
+ * @author Thomas Watkins
+ */
+public final class Voting {
+
+	private Voting() {
+	}
+
+	/**
+	 * Returns whether all elements in a list are equal.
+	 * @param list the list of values to compare
+	 * @return true if all values are equal, or the list has fewer than 2 elements
+	 */
+	public static boolean allEqual(List<?> list) {
+		if (list.size() <= 1)
+			return true;
+		Object first = list.get(0);
+		int hash = Objects.hashCode(first);
+		for (int i = 1; i < list.size(); i++) {
+			Object o = list.get(i);
+			if (Objects.hashCode(o) != hash || !Objects.equals(first, o))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the most common element in a list. Ties are broken in favour of the
+	 * element that appears first.
+	 * @param list the list of elements
+	 * @return the majority element, or null if the list is empty
+	 */
+	public static <T> T findMajority(List<T> list) {
+		// Count each distinct element, keeping the order they first appear in
+		Map<T, Integer> counts = new LinkedHashMap<>();
+		for (T element : list)
+			counts.merge(element, 1, Integer::sum);
+
+		T majority = null;
+		int best = 0;
+		for (Map.Entry<T, Integer> e : counts.entrySet()) {
+			if (e.getValue() > best) {
+				majority = e.getKey();
+				best = e.getValue();
+			}
+		}
+		return majority;
+	}
+}